@@ -5,7 +5,6 @@ import dev.vxcc.tinyjcbor.serde.CborSerializer;
 import dev.vxcc.tinyjcbor.util.CborValue;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -17,7 +16,7 @@ public class Cbor {
      * @since 1.0.0-rc.1
      */
     public static <T> T decode(@NotNull ByteBuffer buffer, @NotNull CborDeserializer<T> parser) throws InvalidCborException {
-        return new CborDecoder(buffer).read(parser);
+        return new CborDecoder(buffer).read("Cbor.decode", parser);
     }
 
     /**
@@ -26,19 +25,23 @@ public class Cbor {
      * @since 1.0.0-rc.3
      */
     public static CborValue decode(@NotNull ByteBuffer buffer) throws InvalidCborException {
-        return new CborDecoder(buffer).read(CborValue.CODEC);
+        return decode(buffer, CborValue.CODEC);
     }
 
     /**
      * @since 1.0.0-rc.1
      */
     public static <T> byte @NotNull[] encode(@NotNull ByteOrder byteOrder, T value, @NotNull CborSerializer<T> encoder) {
-        var out = new ByteArrayOutputStream();
+        var out = new CborOutputBuffer();
         var e = new CborEncoder(byteOrder, out);
+        var event = CborEvents.begin();
         try {
             encoder.encode(e, value);
         } catch (IOException ex) { /* how even */
             throw new RuntimeException(ex);
+        } finally {
+            if (event != null)
+                event.end("Cbor.encode", encoder, out.asByteBuffer().order(byteOrder), 0, out.size());
         }
         return out.toByteArray();
     }
@@ -9,6 +9,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.function.BiConsumer;
@@ -22,12 +23,23 @@ import java.util.function.BiFunction;
  */
 public final class CborDecoder {
     @NotNull
-    private final ByteBuffer buffer;
+    private ByteBuffer buffer;
+    @Nullable
+    private CborValueTokens tokens;
 
     private long tokenArg;
     private int tokenMajorType = 69;
     private int tokenAdditionalInfo;
     private boolean tokenIndefiniteLength;
+    /** the contents of the string token last read by {@link #next()} have not been consumed yet */
+    private boolean tokenContentPending;
+    @Nullable private CborMetrics metrics;
+    /** the last exception counted by {@link #read(CborDeserializer)}, so it is counted only once when it propagates through nested reads */
+    @Nullable private RuntimeException countedException;
+    /** number of {@link #read(CborDeserializer)} calls in progress, only the outermost one records JFR events */
+    private int readDepth;
+    /** reused by the outermost reads, created once a recording enables the events */
+    @Nullable private CborEvents events;
 
     /**
      * Construct a new CBOR decoder, with the byte order of the buffer!
@@ -37,28 +49,83 @@ public final class CborDecoder {
      */
     public CborDecoder(@NotNull ByteBuffer buffer) {
         this.buffer = buffer;
+        this.tokens = null;
+    }
+
+    /**
+     * Start decoding another buffer, as if this was a new decoder. Allows reusing decoder instances, for example per thread.
+     * <p>All state is cleared: snapshots, readers, and entered containers.
+     * Snapshots taken before must not be used anymore.
+     *
+     * @param buffer byte buffer from which CBOR is decoded from, with the byte order of the buffer
+     * @since 1.0.0-rc.4
+     */
+    public void reset(@NotNull ByteBuffer buffer) {
+        /* the view can be kept when the same buffer is decoded again */
+        if (buffer != this.buffer)
+            stringView = null;
+        this.buffer = buffer;
+        this.tokens = null;
+        tokenArg = 0;
+        tokenMajorType = 69;
+        tokenAdditionalInfo = 0;
+        tokenIndefiniteLength = false;
+        tokenContentPending = false;
+        snapshotDepth = 0;
+        containerDepth = 0;
+        manualReader.end = true;
+    }
+
+    /**
+     * Construct a CBOR decoder, that reads the given value, by directly walking the tree.
+     * <p>This allows running any {@code CborDeserializer} on an in-memory value, without encoding it first.
+     *
+     * @see CborValue#asDecoder()
+     * @since 1.0.0-rc.4
+     */
+    public CborDecoder(@NotNull CborValue value) {
+        this.buffer = ByteBuffer.allocate(0);
+        this.tokens = new CborValueTokens(value);
     }
 
     /**
      * Represents a copy of the state of a CBOR decoder at a past point in time.
      *
-     * @see #reset(Snapshot)
+     * @see #rewind(Snapshot)
      * @see #snapshot()
      */
     public static final class Snapshot {
-        private int position;
+        int position;
         private long tokenArg;
         private int tokenMajorType;
         private int tokenAdditionalInfo;
         private boolean tokenIndefiniteLength;
+        private boolean tokenContentPending;
+
+        /* state of CborValueTokens */
+        Object[] frameRef;
+        byte[] frameKind;
+        int[] frameIdx;
+        int[] frameLen;
+        int depth;
+        ByteBuffer bytes;
+        int bytesPosition;
+
+        /* depth of enterArray() / enterMap() */
+        private int containerDepth;
 
         /** Back-up the given decoder into this snapshot */
         public void from(@NotNull CborDecoder decoder) {
-            position = decoder.buffer.position();
+            if (decoder.tokens != null)
+                decoder.tokens.save(this);
+            else
+                position = decoder.buffer.position();
             tokenArg = decoder.tokenArg;
             tokenMajorType = decoder.tokenMajorType;
             tokenAdditionalInfo = decoder.tokenAdditionalInfo;
             tokenIndefiniteLength = decoder.tokenIndefiniteLength;
+            tokenContentPending = decoder.tokenContentPending;
+            containerDepth = decoder.containerDepth;
         }
     }
 
@@ -72,7 +139,7 @@ public final class CborDecoder {
      *     snap.from(decoder);
      * </code></pre>
      *
-     * @see #reset(Snapshot)
+     * @see #rewind(Snapshot)
      * @see Snapshot#from(CborDecoder)
      */
     public @NotNull Snapshot snapshot() {
@@ -81,20 +148,159 @@ public final class CborDecoder {
         return snap;
     }
 
-    /** Load decoder state from snapshot / restore snapshot */
+    /* stack of snapshots for backtracking deserializers, reused across calls */
+    private Snapshot @NotNull [] snapshotStack = new Snapshot[4];
+    private int snapshotDepth;
+
+    /**
+     * Back-up the decoder state into the next snapshot of a stack owned by this decoder.
+     * <p>Allows stateless (and therefore thread safe and reentrant) deserializers to backtrack without allocating a snapshot per call.
+     * Every acquired snapshot has to be released again with {@link #releaseSnapshot(Snapshot)}, in reverse order of acquisition.
+     *
+     * <pre><code>
+     *     var snap = decoder.acquireSnapshot();
+     *     try {
+     *         ...
+     *         decoder.rewind(snap);
+     *         ...
+     *     } finally {
+     *         decoder.releaseSnapshot(snap);
+     *     }
+     * </code></pre>
+     *
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull Snapshot acquireSnapshot() {
+        if (snapshotDepth == snapshotStack.length)
+            snapshotStack = Arrays.copyOf(snapshotStack, snapshotDepth << 1);
+        var snap = snapshotStack[snapshotDepth];
+        if (snap == null)
+            snapshotStack[snapshotDepth] = snap = new Snapshot();
+        snapshotDepth++;
+        snap.from(this);
+        return snap;
+    }
+
+    /**
+     * @see #acquireSnapshot()
+     * @throws IllegalStateException the snapshot is not the most recently acquired one
+     * @since 1.0.0-rc.4
+     */
+    public void releaseSnapshot(@NotNull Snapshot snapshot) {
+        if (snapshotDepth == 0 || snapshotStack[snapshotDepth - 1] != snapshot)
+            throw new IllegalStateException("Snapshots have to be released in reverse order of acquisition");
+        snapshotDepth--;
+    }
+
+    /**
+     * @deprecated same as {@link #rewind(Snapshot)}, which is not confused with {@link #reset(ByteBuffer)}
+     */
+    @Deprecated
     public void reset(@NotNull Snapshot snapshot) {
-        buffer.position(snapshot.position);
+        rewind(snapshot);
+    }
+
+    /**
+     * Load decoder state from snapshot / restore snapshot
+     * @since 1.0.0-rc.4
+     */
+    public void rewind(@NotNull Snapshot snapshot) {
+        if (tokens != null)
+            tokens.restore(snapshot);
+        else
+            buffer.position(snapshot.position);
         tokenArg = snapshot.tokenArg;
         tokenMajorType = snapshot.tokenMajorType;
         tokenAdditionalInfo = snapshot.tokenAdditionalInfo;
         tokenIndefiniteLength = snapshot.tokenIndefiniteLength;
+        tokenContentPending = snapshot.tokenContentPending;
+        containerDepth = snapshot.containerDepth;
     }
 
     public boolean hasNext() {
+        if (tokens != null)
+            return tokens.hasNext();
         return buffer.hasRemaining();
     }
 
+    /**
+     * @return the decoded buffer itself, not a copy, or {@code null} if this decodes a {@code CborValue}
+     * @see #CborDecoder(CborValue)
+     * @since 1.0.0-rc.4
+     */
+    public @Nullable ByteBuffer buffer() {
+        return tokens != null ? null : buffer;
+    }
+
+    /**
+     * @return the position in the buffer, or the number of tokens read if this decodes a {@code CborValue}
+     * @since 1.0.0-rc.4
+     */
+    public int position() {
+        if (tokens != null)
+            return tokens.position();
+        return buffer.position();
+    }
+
+    /** source of the contents of the current byte string or text token */
+    private @NotNull ByteBuffer stringSource() {
+        if (tokens != null)
+            return tokens.bytes();
+        return buffer;
+    }
+
+    private void skipBytes(long n) {
+        if (tokens != null) {
+            tokens.bytes().position(tokens.bytes().limit());
+            return;
+        }
+        if (n > buffer.remaining())
+            throw new NoSuchElementException();
+        buffer.position(buffer.position() + (int) n);
+    }
+
+    /**
+     * Count what this decoder reads in the given metrics. The metrics are kept by {@link #reset(ByteBuffer)}.
+     * @param metrics {@code null} to stop counting
+     * @since 1.0.0-rc.4
+     */
+    public void setMetrics(@Nullable CborMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the metrics this decoder counts in, or {@code null}
+     * @since 1.0.0-rc.4
+     */
+    public @Nullable CborMetrics metrics() {
+        return metrics;
+    }
+
     private void nextToken() throws InvalidCborException {
+        var metrics = this.metrics;
+        if (metrics == null) {
+            readHead();
+            return;
+        }
+        int start = tokens != null ? 0 : buffer.position();
+        readHead();
+        int headBytes = tokens != null ? 0 : buffer.position() - start;
+        boolean string = (tokenMajorType == 2 || tokenMajorType == 3) && !tokenIndefiniteLength;
+        metrics.decodedToken(tokenMajorType, headBytes, string ? tokenArg : 0);
+    }
+
+    /** like {@link #nextToken()}, but not counted in the metrics */
+    private void readHead() throws InvalidCborException {
+        if (tokenContentPending)
+            throw new IllegalStateException("The contents of the last byte string or text token have to be consumed first");
+        if (tokens != null) {
+            tokens.next();
+            tokenMajorType = tokens.major;
+            tokenAdditionalInfo = tokens.additionalInfo;
+            tokenArg = tokens.arg;
+            tokenIndefiniteLength = false;
+            return;
+        }
         if (!hasNext())
             throw new NoSuchElementException();
         byte firstByte = buffer.get();
@@ -105,9 +311,9 @@ public final class CborDecoder {
         tokenIndefiniteLength = false;
 
         switch (tokenAdditionalInfo) {
-            case 24: tokenArg = buffer.get(); break;
-            case 25: tokenArg = buffer.getShort(); break;
-            case 26: tokenArg = buffer.getInt(); break;
+            case 24: tokenArg = buffer.get() & 0xFFL; break;
+            case 25: tokenArg = buffer.getShort() & 0xFFFFL; break;
+            case 26: tokenArg = buffer.getInt() & 0xFFFFFFFFL; break;
             case 27: tokenArg = buffer.getLong(); break;
             case 28:
             case 29:
@@ -170,12 +376,14 @@ public final class CborDecoder {
      * @since 1.0.0-rc.1
      */
     public @Nullable CborType peekTokenType() {
+        if (tokens != null)
+            return tokens.peekType();
         if (!hasNext())
             return null;
         peekSnapshot.from(this);
-        nextToken();
+        readHead();
         var ty = currentTokenType();
-        reset(peekSnapshot);
+        rewind(peekSnapshot);
         return ty;
     }
 
@@ -196,7 +404,41 @@ public final class CborDecoder {
      * @since 1.0.0-rc.1
      */
     public <T> T read(@NotNull CborDeserializer<T> decoder) throws UnexpectedCborException {
-        return decoder.next(this);
+        return read("CborDecoder.read", decoder);
+    }
+
+    /** @param operation name of the operation in the JFR events */
+    <T> T read(@NotNull String operation, @NotNull CborDeserializer<T> decoder) throws UnexpectedCborException {
+        int depth = containerDepth;
+        /* nested reads are part of the event of the outermost read */
+        var event = readDepth == 0 ? startEvents() : null;
+        int start = event != null ? position() : 0;
+        readDepth++;
+        try {
+            return decoder.next(this);
+        } catch (RuntimeException e) {
+            /* leave the containers the failed deserializer entered, so a reused decoder has no stale frames */
+            containerDepth = depth;
+            if (metrics != null && (e instanceof UnexpectedCborException || e instanceof InvalidCborException) && e != countedException) {
+                countedException = e;
+                metrics.exception(e);
+            }
+            throw e;
+        } finally {
+            readDepth--;
+            if (event != null)
+                event.end(operation, decoder, tokens != null ? null : buffer, start, position());
+        }
+    }
+
+    private @Nullable CborEvents startEvents() {
+        if (!CborEvents.enabled())
+            return null;
+        var e = events;
+        if (e == null)
+            events = e = new CborEvents();
+        e.start();
+        return e;
     }
 
     /**
@@ -206,38 +448,47 @@ public final class CborDecoder {
      * @since 1.0.0-rc.1
      */
     public void readAny()  {
+        readAny(0);
+    }
+
+    /** @param depth number of arrays and maps around the item */
+    private void readAny(int depth) {
         nextToken();
         try {
             switch (currentTokenType()) {
                 case Tag:
-                    readAny();
+                    readAny(depth);
                     break;
 
                 case Map:
+                    if (metrics != null)
+                        metrics.depth(depth + 1);
                     if (tokenIndefiniteLength) {
                         while (peekTokenType() != CborType.Break) {
-                            readAny();
-                            readAny();
+                            readAny(depth + 1);
+                            readAny(depth + 1);
                         }
                         readBreak();
                     } else {
                         long n = tokenArg;
                         for (long i = 0; i < n; i++) {
-                            readAny();
-                            readAny();
+                            readAny(depth + 1);
+                            readAny(depth + 1);
                         }
                     }
                     break;
 
                 case Array:
+                    if (metrics != null)
+                        metrics.depth(depth + 1);
                     if (tokenIndefiniteLength) {
                         while (peekTokenType() != CborType.Break)
-                            readAny();
+                            readAny(depth + 1);
                         readBreak();
                     } else {
                         long n = tokenArg;
                         for (long i = 0; i < n; i++)
-                            readAny();
+                            readAny(depth + 1);
                     }
                     break;
 
@@ -245,12 +496,10 @@ public final class CborDecoder {
                 case ByteString:
                     if (tokenIndefiniteLength) {
                         while (peekTokenType() != CborType.Break)
-                            readAny();
+                            readAny(depth);
                         readBreak();
                     } else {
-                        long n = tokenArg;
-                        for (long i = 0; i < n; i++)
-                            buffer.get();
+                        skipBytes(tokenArg);
                     }
                     break;
             }
@@ -259,6 +508,293 @@ public final class CborDecoder {
         }
     }
 
+    /**
+     * Read the next token, without checking its type. Part of the low-level pull API.
+     * <p>The argument of the token is returned by {@link #tokenArg()}.
+     * Definite length byte strings and texts are followed by their contents,
+     * which have to be consumed with {@link #tokenContent()} or {@link #skipTokenContent()} before reading the next token.
+     * Indefinite length items are followed by their items or chunks, and then a {@link CborToken#BREAK} token.
+     * <br><br>
+     *
+     * Example:
+     * <pre><code>
+     *     if (decoder.next() != CborToken.ARRAY || decoder.tokenIndefiniteLength())
+     *         throw ...;
+     *     for (long i = decoder.tokenArg(); i > 0; i--) {
+     *         switch (decoder.next()) {
+     *             case CborToken.UNSIGNED_INTEGER -> sum += decoder.tokenArg();
+     *             case CborToken.TEXT -> names.add(StandardCharsets.UTF_8.decode(decoder.tokenContent()));
+     *             default -> throw ...;
+     *         }
+     *     }
+     * </code></pre>
+     *
+     * @return the kind of the token, one of the constants in {@link CborToken}
+     * @throws NoSuchElementException there is no next token
+     * @throws IllegalStateException the contents of the last byte string or text token have not been consumed
+     *         with {@link #tokenContent()} or {@link #skipTokenContent()}
+     * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public int next() {
+        nextToken();
+        tokenContentPending = (tokenMajorType == 2 || tokenMajorType == 3) && !tokenIndefiniteLength;
+        return switch (tokenMajorType) {
+            case 7 -> switch (tokenAdditionalInfo) {
+                case 25 -> CborToken.FLOAT16;
+                case 26 -> CborToken.FLOAT32;
+                case 27 -> CborToken.FLOAT64;
+                case 31 -> CborToken.BREAK;
+                default -> switch ((int) tokenArg) {
+                    case 20 -> CborToken.FALSE;
+                    case 21 -> CborToken.TRUE;
+                    case 22 -> CborToken.NULL;
+                    case 23 -> CborToken.UNDEFINED;
+                    default -> CborToken.SIMPLE_VALUE;
+                };
+            };
+            default -> tokenMajorType;
+        };
+    }
+
+    /**
+     * The argument of the last token read by {@link #next()}, see {@link CborToken} for its meaning per token kind.
+     * <p>Always 0 for tokens of indefinite length.
+     * @since 1.0.0-rc.4
+     */
+    public long tokenArg() {
+        return tokenArg;
+    }
+
+    /**
+     * @return if the last token read by {@link #next()} starts an indefinite length item
+     * @since 1.0.0-rc.4
+     */
+    public boolean tokenIndefiniteLength() {
+        return tokenIndefiniteLength;
+    }
+
+    /**
+     * Consume the contents of the last token read by {@link #next()}, which has to be a definite length byte string or text.
+     * @return a view of the contents, which is only valid until the next call of this method
+     * @throws IllegalStateException the last token is not a definite length byte string or text, or its contents have already been consumed
+     * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull ByteBuffer tokenContent() {
+        checkStringToken();
+        return stringView(tokenArg);
+    }
+
+    /**
+     * Skip the contents of the last token read by {@link #next()}, which has to be a definite length byte string or text.
+     * @throws IllegalStateException the last token is not a definite length byte string or text, or its contents have already been consumed
+     * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public void skipTokenContent() {
+        checkStringToken();
+        try {
+            skipBytes(tokenArg);
+        } catch (NoSuchElementException ignored) {
+            throw new InvalidCborException();
+        }
+    }
+
+    private void checkStringToken() {
+        if (!tokenContentPending)
+            throw new IllegalStateException("The last token is not a definite length byte string or text, or its contents have already been consumed");
+        tokenContentPending = false;
+    }
+
+    /**
+     * Skip the whole next item, and return its encoded bytes, without copying them.
+     * <p>Useful to forward parts of a document with {@link CborEncoder#writeEncoded(ByteBuffer)}.
+     * @return a view of the decoded buffer, with its byte order
+     * @throws IllegalStateException this decoder does not decode a buffer, see {@link #CborDecoder(CborValue)}
+     * @throws NoSuchElementException there is no next item
+     * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull ByteBuffer readRawItem() {
+        if (tokens != null)
+            throw new IllegalStateException("Decoder does not decode a buffer");
+        int start = buffer.position();
+        readAny();
+        return buffer.slice(start, buffer.position() - start).order(buffer.order());
+    }
+
+    private static final byte VISIT_ARRAY = 0;
+    private static final byte VISIT_MAP = 1;
+    /* same as the major type of the chunks */
+    private static final byte VISIT_CHUNKED_BYTES = 2;
+    private static final byte VISIT_CHUNKED_TEXT = 3;
+
+    /* stack of open containers of accept(), reused across calls.
+       remaining items for definite lengths, or -1 minus the number of items read for indefinite lengths */
+    private long @NotNull [] visitRemaining = new long[8];
+    private byte @NotNull [] visitKind = new byte[8];
+    @Nullable private ByteBuffer stringView;
+
+    /**
+     * Read the whole next item, and report it to the visitor as a sequence of events.
+     * <p>Does not allocate, except for growing the container stack once for deeply nested items,
+     * and does not recurse, so the nesting depth is only limited by memory.
+     * <p>The visitor must not use this decoder.
+     *
+     * @throws NoSuchElementException there is no next item
+     * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public void accept(@NotNull CborVisitor visitor) {
+        nextToken();
+        int depth = 0;
+        long[] remaining = visitRemaining;
+        byte[] kind = visitKind;
+        try {
+            while (true) {
+                boolean complete = true;
+                /* chunks of chunked strings have to be definite strings of the same type */
+                if (depth > 0 && kind[depth - 1] >= VISIT_CHUNKED_BYTES && !(tokenMajorType == 7 && tokenAdditionalInfo == 31)
+                        && (tokenMajorType != kind[depth - 1] || tokenIndefiniteLength))
+                    throw new InvalidCborException();
+                switch (tokenMajorType) {
+                    case 0 -> visitor.visitUnsigned(tokenArg);
+                    case 1 -> visitor.visitNegative(tokenArg);
+                    case 2, 3 -> {
+                        if (tokenIndefiniteLength) {
+                            if (tokenMajorType == 2)
+                                visitor.beginChunkedBytes();
+                            else
+                                visitor.beginChunkedText();
+                            complete = false;
+                        } else if (tokenMajorType == 2) {
+                            visitor.visitBytes(stringView(tokenArg));
+                        } else {
+                            visitor.visitText(stringView(tokenArg));
+                        }
+                    }
+                    case 4, 5 -> {
+                        long n = tokenIndefiniteLength ? -1 : tokenArg;
+                        if (tokenMajorType == 4)
+                            visitor.beginArray(n);
+                        else
+                            visitor.beginMap(n);
+                        if (n != 0)
+                            complete = false;
+                        else if (tokenMajorType == 4)
+                            visitor.endArray();
+                        else
+                            visitor.endMap();
+                    }
+                    case 6 -> {
+                        visitor.visitTag(tokenArg);
+                        nextToken();
+                        if (tokenMajorType == 7 && tokenAdditionalInfo == 31)
+                            throw new InvalidCborException();
+                        continue;
+                    }
+                    default -> {
+                        switch (tokenAdditionalInfo) {
+                            case 25 -> visitor.visitFloat16((short) tokenArg);
+                            case 26 -> visitor.visitFloat32(Float.intBitsToFloat((int) tokenArg));
+                            case 27 -> visitor.visitFloat64(Double.longBitsToDouble(tokenArg));
+                            case 31 -> {
+                                if (depth == 0 || remaining[depth - 1] >= 0)
+                                    throw new InvalidCborException();
+                                depth--;
+                                switch (kind[depth]) {
+                                    case VISIT_ARRAY -> visitor.endArray();
+                                    case VISIT_MAP -> {
+                                        if ((remaining[depth] & 1) == 0)
+                                            throw new InvalidCborException();
+                                        visitor.endMap();
+                                    }
+                                    case VISIT_CHUNKED_BYTES -> visitor.endChunkedBytes();
+                                    default -> visitor.endChunkedText();
+                                }
+                            }
+                            default -> {
+                                switch ((int) tokenArg) {
+                                    case 20 -> visitor.visitBool(false);
+                                    case 21 -> visitor.visitBool(true);
+                                    case 22 -> visitor.visitNull();
+                                    case 23 -> visitor.visitUndefined();
+                                    default -> visitor.visitSimple((int) tokenArg);
+                                }
+                            }
+                        }
+                    }
+                }
+
+                if (!complete) {
+                    if (depth == remaining.length) {
+                        visitRemaining = remaining = Arrays.copyOf(remaining, depth << 1);
+                        visitKind = kind = Arrays.copyOf(kind, depth << 1);
+                    }
+                    kind[depth] = switch (tokenMajorType) {
+                        case 2 -> VISIT_CHUNKED_BYTES;
+                        case 3 -> VISIT_CHUNKED_TEXT;
+                        case 4 -> VISIT_ARRAY;
+                        default -> VISIT_MAP;
+                    };
+                    if (tokenIndefiniteLength)
+                        remaining[depth] = -1;
+                    else if (tokenMajorType == 5)
+                        remaining[depth] = tokenArg << 1;
+                    else
+                        remaining[depth] = tokenArg;
+                    depth++;
+                    if (metrics != null)
+                        metrics.depth(depth);
+                } else {
+                    /* close all containers, that are complete with this item */
+                    while (depth > 0) {
+                        long r = remaining[depth - 1];
+                        if (r < 0) {
+                            remaining[depth - 1] = r - 1;
+                            break;
+                        }
+                        if (r != 1) {
+                            remaining[depth - 1] = r - 1;
+                            break;
+                        }
+                        depth--;
+                        if (kind[depth] == VISIT_ARRAY)
+                            visitor.endArray();
+                        else
+                            visitor.endMap();
+                    }
+                }
+
+                if (depth == 0)
+                    return;
+                nextToken();
+            }
+        } catch (NoSuchElementException ignored) {
+            throw new InvalidCborException();
+        }
+    }
+
+    /** consumes the contents of the current string token, and returns them as reused view */
+    private @NotNull ByteBuffer stringView(long length) {
+        var source = stringSource();
+        if (length > source.remaining())
+            throw new InvalidCborException();
+        int start = source.position();
+        int end = start + (int) length;
+        source.position(end);
+        if (tokens != null)
+            return source.slice(start, (int) length);
+        var view = stringView;
+        if (view == null)
+            stringView = view = buffer.duplicate();
+        view.clear();
+        view.position(start);
+        view.limit(end);
+        return view;
+    }
+
     /**
      * @throws UnexpectedCborException next token is not a simple value
      * @throws NoSuchElementException there is no next item
@@ -397,14 +933,17 @@ public final class CborDecoder {
      * @throws UnexpectedCborException next token is not of type break
      * @throws NoSuchElementException there is no next item
      * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
      */
-    private void readBreak() throws UnexpectedCborException {
+    public void readBreak() throws UnexpectedCborException {
         nextToken();
         if (currentTokenType() != CborType.Break)
             throw new UnexpectedCborException.UnexpectedType(CborType.Break.name(), currentTokenType());
     }
 
     /**
+     * Read only the head of an array. The caller has to read all items, and the break if the array is of indefinite length.
+     *
      * @return the known length of the array<br>
      *         or {@code Long.MIN_VALUE} if it's an indefinite length array (terminated by break)
      *
@@ -414,8 +953,9 @@ public final class CborDecoder {
      * @throws UnexpectedCborException next token is not an array
      * @throws NoSuchElementException there is no next item
      * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
      */
-    private long readArrayRaw() throws UnexpectedCborException {
+    public long readArrayRaw() throws UnexpectedCborException {
         nextToken();
         if (tokenMajorType != 4)
             throw new UnexpectedCborException.UnexpectedType(CborType.Array.name(), currentTokenType());
@@ -425,6 +965,8 @@ public final class CborDecoder {
     }
 
     /**
+     * Read only the head of a map. The caller has to read all keys and values, and the break if the map is of indefinite length.
+     *
      * @return the known number of pairs in the map,<br>
      *         or {@code Long.MIN_VALUE} if it's an indefinite length map (terminated by break)
      *
@@ -434,8 +976,9 @@ public final class CborDecoder {
      * @throws UnexpectedCborException next token is not a map
      * @throws NoSuchElementException there is no next item
      * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
      */
-    private long readMapRaw() throws UnexpectedCborException {
+    public long readMapRaw() throws UnexpectedCborException {
         nextToken();
         if (tokenMajorType != 5)
             throw new UnexpectedCborException.UnexpectedType(CborType.Map.name(), currentTokenType());
@@ -496,7 +1039,7 @@ public final class CborDecoder {
             indefiniteByteArrayReader.init(2, CborType.ByteString.name());
             return indefiniteByteArrayReader;
         }
-        finiteByteArrayReader.init(tokenArg);
+        finiteByteArrayReader.init(stringSource(), tokenArg);
         return finiteByteArrayReader;
     }
 
@@ -536,7 +1079,7 @@ public final class CborDecoder {
             indefiniteByteArrayReader.init(3, CborType.Text.name());
             byteReader = indefiniteByteArrayReader;
         } else {
-            finiteByteArrayReader.init(tokenArg);
+            finiteByteArrayReader.init(stringSource(), tokenArg);
             byteReader = finiteByteArrayReader;
         }
 
@@ -594,7 +1137,7 @@ public final class CborDecoder {
             indefiniteByteArrayReader.init(3, CborType.Text.name());
             return indefiniteByteArrayReader;
         } else {
-            finiteByteArrayReader.init(tokenArg);
+            finiteByteArrayReader.init(stringSource(), tokenArg);
             return finiteByteArrayReader;
         }
     }
@@ -703,6 +1246,25 @@ public final class CborDecoder {
             return 1;
         }
 
+        /**
+         * @return the exact number of remaining bytes, or -1 if it is not known in advance (chunked strings)
+         * @since 1.0.0-rc.4
+         */
+        public long remainingLength() {
+            return -1;
+        }
+
+        /**
+         * Consume all remaining bytes, and return them as view of the decoded buffer, without copying.
+         * <p>The view has the byte order of the decoded buffer, and is only valid as long as the buffer's contents are.
+         * @return the remaining bytes, or {@code null} if they are not contiguous (chunked strings). Nothing is consumed then.
+         * @throws InvalidCborException the data ends before the string
+         * @since 1.0.0-rc.4
+         */
+        public @Nullable ByteBuffer slice() {
+            return null;
+        }
+
         /**
          * Read all remaining bytes
          * @throws InvalidCborException data is not valid CBOR
@@ -771,9 +1333,11 @@ public final class CborDecoder {
     }
 
     private final class FiniteByteReader extends ByteReader {
+        @NotNull private ByteBuffer source = buffer;
         private long remaining;
 
-        public void init(long length) {
+        public void init(@NotNull ByteBuffer source, long length) {
+            this.source = source;
             remaining = length;
         }
 
@@ -786,8 +1350,10 @@ public final class CborDecoder {
         public byte nextByte() {
             if (remaining == 0)
                 throw new NoSuchElementException();
+            if (!source.hasRemaining())
+                throw new InvalidCborException();
             remaining -= 1;
-            return buffer.get();
+            return source.get();
         }
 
         @Override
@@ -797,8 +1363,10 @@ public final class CborDecoder {
             int read = length;
             if (read > remaining)
                 read = guessRemainingLength();
+            if (read > source.remaining())
+                throw new InvalidCborException();
             remaining -= read;
-            buffer.get(dst, offset, read);
+            source.get(dst, offset, read);
             return read;
         }
 
@@ -808,6 +1376,36 @@ public final class CborDecoder {
                 return Integer.MAX_VALUE;
             return (int) remaining;
         }
+
+        @Override
+        public long remainingLength() {
+            return remaining;
+        }
+
+        @Override
+        public @NotNull ByteBuffer slice() {
+            if (remaining < 0 || remaining > source.remaining())
+                throw new InvalidCborException();
+            int n = (int) remaining;
+            var out = source.slice(source.position(), n).order(source.order());
+            source.position(source.position() + n);
+            remaining = 0;
+            return out;
+        }
+
+        /** Copies the bytes once, into an array of exactly the right size */
+        @Override
+        public byte[] readAll() {
+            /* the length is not trusted before the bytes are there, or a short input could allocate gigabytes */
+            if (remaining < 0 || remaining > source.remaining())
+                throw new InvalidCborException();
+            if (remaining > Integer.MAX_VALUE - 8)
+                return super.readAll();
+            var out = new byte[(int) remaining];
+            source.get(out);
+            remaining = 0;
+            return out;
+        }
     }
 
     private final class IndefiniteByteReader extends ByteReader {
@@ -840,7 +1438,7 @@ public final class CborDecoder {
 
             if (tokenMajorType != majorType || tokenIndefiniteLength)
                 throw new UnexpectedCborException.UnexpectedType(expectedName, currentTokenType());
-            finiteByteArrayReader.init(tokenArg);
+            finiteByteArrayReader.init(stringSource(), tokenArg);
             _hasFinite = true;
             return finiteByteArrayReader;
         }
@@ -870,6 +1468,136 @@ public final class CborDecoder {
     @NotNull
     private final ManualReader manualReader = new ManualReader();
 
+    /* stack of containers entered with enterArray() and enterMap(), reused across calls.
+       remaining items or pairs, or Long.MIN_VALUE for indefinite lengths */
+    private long @NotNull [] containerRemaining = new long[8];
+    private boolean @NotNull [] containerIsMap = new boolean[8];
+    /* handle of the container at each depth */
+    private int @NotNull [] containerHandle = new int[8];
+    private int containerDepth;
+    /* handles are the depth in the low bits, and a counter of entered containers in the high bits,
+       so the handle of a left container does not match a later container at the same depth */
+    private static final int HANDLE_DEPTH_BITS = 20;
+    private static final int HANDLE_DEPTH_MASK = (1 << HANDLE_DEPTH_BITS) - 1;
+    private int containerGeneration;
+
+    private int enterContainer(long length, boolean map) {
+        if (containerDepth == HANDLE_DEPTH_MASK)
+            throw new InvalidCborException();
+        if (containerDepth == containerRemaining.length) {
+            containerRemaining = Arrays.copyOf(containerRemaining, containerDepth << 1);
+            containerIsMap = Arrays.copyOf(containerIsMap, containerDepth << 1);
+            containerHandle = Arrays.copyOf(containerHandle, containerDepth << 1);
+        }
+        containerGeneration = (containerGeneration + 1) & (-1 >>> (HANDLE_DEPTH_BITS + 1));
+        int handle = (containerGeneration << HANDLE_DEPTH_BITS) | containerDepth;
+        containerRemaining[containerDepth] = length;
+        containerIsMap[containerDepth] = map;
+        containerHandle[containerDepth] = handle;
+        if (metrics != null)
+            metrics.depth(containerDepth + 1);
+        containerDepth++;
+        return handle;
+    }
+
+    /** @return the depth of the container, if it is still entered, otherwise -1 */
+    private int containerIndex(int handle) {
+        int depth = handle & HANDLE_DEPTH_MASK;
+        if (handle < 0 || depth >= containerDepth || containerHandle[depth] != handle)
+            return -1;
+        return depth;
+    }
+
+    /**
+     * Read the head of an array, and enter it. Unlike {@link #readArray(CborDeserializer)} and {@link #readArrayManual()},
+     * this does not allocate, and containers can be nested to any depth.
+     * <p>The items are then read by calling {@link #nextItem(int)} with the returned handle before every item,
+     * until it returns {@code false}.
+     *
+     * <pre><code>
+     *     int users = decoder.enterArray();
+     *     while (decoder.nextItem(users)) {
+     *         int user = decoder.enterMap();
+     *         while (decoder.nextItem(user)) {
+     *             var key = decoder.read(CborPrim.STRING);
+     *             ...
+     *         }
+     *     }
+     * </code></pre>
+     *
+     * @return handle of the container
+     * @throws UnexpectedCborException next token is not an array
+     * @throws NoSuchElementException there is no next item
+     * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public int enterArray() throws UnexpectedCborException {
+        return enterContainer(readArrayRaw(), false);
+    }
+
+    /**
+     * Read the head of a map, and enter it. Like {@link #enterArray()}, but {@link #nextItem(int)} has to be called before every pair.
+     * @return handle of the container
+     * @throws UnexpectedCborException next token is not a map
+     * @throws NoSuchElementException there is no next item
+     * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public int enterMap() throws UnexpectedCborException {
+        return enterContainer(readMapRaw(), true);
+    }
+
+    /**
+     * Check if the container has another item (or pair, for maps), that then has to be read.
+     * <p>At the end of the container, reads the break of indefinite length containers, and leaves the container.
+     * @param handle handle returned by {@link #enterArray()} or {@link #enterMap()}
+     * @return {@code false} at the end of the container
+     * @throws IllegalStateException the container is not the innermost entered container
+     * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public boolean nextItem(int handle) {
+        int container = containerIndex(handle);
+        if (container < 0 || container != containerDepth - 1)
+            throw new IllegalStateException("Not the innermost container");
+        long remaining = containerRemaining[container];
+        if (remaining == Long.MIN_VALUE) {
+            var type = peekTokenType();
+            if (type == null)
+                throw new InvalidCborException();
+            if (type != CborType.Break)
+                return true;
+            nextToken();
+        } else if (remaining != 0) {
+            containerRemaining[container] = remaining - 1;
+            return true;
+        }
+        containerDepth = container;
+        return false;
+    }
+
+    /**
+     * Skip the remaining items of the container, and leave it. Also leaves all containers entered after it.
+     * @param handle handle returned by {@link #enterArray()} or {@link #enterMap()}
+     * @throws IllegalStateException the container has already been left
+     * @throws InvalidCborException data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public void exitContainer(int handle) {
+        int container = containerIndex(handle);
+        if (container < 0)
+            throw new IllegalStateException("Not an entered container");
+        while (containerDepth > container) {
+            int inner = containerDepth - 1;
+            boolean map = containerIsMap[inner];
+            while (nextItem(containerHandle[inner])) {
+                readAny();
+                if (map)
+                    readAny();
+            }
+        }
+    }
+
     /**
      * Helper for manually reading an array.
      *
@@ -880,6 +1608,8 @@ public final class CborDecoder {
      *     arr.end();
      * </code></pre>
      *
+     * <p>The reader is shared, so it can not be used for nested containers. Use {@link #enterArray()} for those.
+     *
      * @see #readArray(CborDeserializer)
      *
      * @throws UnexpectedCborException next token is not an array
@@ -980,7 +1710,7 @@ public final class CborDecoder {
             this.end = false;
             this.length = length;
             this.i = 0;
-            this.lastBufPos = buffer.position() - 1;
+            this.lastBufPos = position() - 1;
         }
 
         private ManualReader() {}
@@ -993,9 +1723,9 @@ public final class CborDecoder {
         }
 
         public void next() throws UnexpectedCborException {
-            if (lastBufPos == buffer.position())
+            if (lastBufPos == position())
                 throw new IllegalStateException("Caller of ManualReader#next didn't read elements between two next() calls");
-            lastBufPos = buffer.position();
+            lastBufPos = position();
 
             if (!hasNext())
                 throw new UnexpectedCborException.UnexpectedEndOfArray(i);
@@ -1009,6 +1739,7 @@ public final class CborDecoder {
                 throw new UnexpectedCborException.ExpectedEndOfArray(i);
             if (length == Long.MIN_VALUE)
                 readBreak();
+            end = true;
         }
     }
 
@@ -4,11 +4,14 @@ import dev.vxcc.tinyjcbor.serde.CborSerializer;
 import dev.vxcc.tinyjcbor.util.CborValue;
 import org.jetbrains.annotations.CheckReturnValue;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * Standard CBOR encoder.
@@ -29,6 +32,38 @@ public final class CborEncoder {
         this.unsafe = new CborRawEncoder(byteOrder, out);
     }
 
+    /**
+     * Start writing to another output stream, as if this was a new encoder with the same byte order.
+     * Allows reusing encoder instances, for example per thread.
+     * <p>All state is cleared: open arrays, maps and chunked strings are discarded.
+     *
+     * @param out the output stream to serialize to
+     * @since 1.0.0-rc.4
+     */
+    public void reset(@NotNull OutputStream out) {
+        unsafe.setOut(out);
+        depth = 0;
+        chunkedByteStringWriter.end = true;
+        chunkedTextWriter.end = true;
+    }
+
+    /**
+     * Count what this encoder writes in the given metrics. The metrics are kept by {@link #reset(OutputStream)}.
+     * @param metrics {@code null} to stop counting
+     * @since 1.0.0-rc.4
+     */
+    public void setMetrics(@Nullable CborMetrics metrics) {
+        unsafe.metrics = metrics;
+    }
+
+    /**
+     * @return the metrics this encoder counts in, or {@code null}
+     * @since 1.0.0-rc.4
+     */
+    public @Nullable CborMetrics metrics() {
+        return unsafe.metrics;
+    }
+
     /**
      * @throws IOException when writing to the {@code OutputStream} fails
      * @since 1.0.0-rc.3
@@ -53,6 +88,7 @@ public final class CborEncoder {
      */
     public void writeUnsigned(long i) throws IOException {
         unsafe.writeUInt(i);
+        item();
     }
 
     /**
@@ -62,6 +98,7 @@ public final class CborEncoder {
      */
     public void writeSigned(long i) throws IOException {
         unsafe.writeSInt(i);
+        item();
     }
 
     /**
@@ -74,6 +111,7 @@ public final class CborEncoder {
         if ((int) (byte) b != b)
             throw new IllegalArgumentException();
         unsafe.writeSimple((byte) b);
+        item();
     }
 
     /**
@@ -83,6 +121,7 @@ public final class CborEncoder {
      */
     public void writeBool(boolean b) throws IOException {
         unsafe.writeSimple((byte)(b ? 21 : 20));
+        item();
     }
 
     /**
@@ -92,6 +131,7 @@ public final class CborEncoder {
      */
     public void writeNull() throws IOException {
         unsafe.writeSimple((byte) 22);
+        item();
     }
 
     /**
@@ -101,6 +141,7 @@ public final class CborEncoder {
      */
     public void writeUndefined() throws IOException {
         unsafe.writeSimple((byte) 23);
+        item();
     }
 
     /**
@@ -111,6 +152,7 @@ public final class CborEncoder {
      */
     public void writeFloat16(short s) throws IOException {
         unsafe.writeF16(s);
+        item();
     }
 
     /**
@@ -120,6 +162,7 @@ public final class CborEncoder {
      */
     public void writeFloat32(float f) throws IOException {
         unsafe.writeF32(Float.floatToIntBits(f));
+        item();
     }
 
     /**
@@ -129,6 +172,44 @@ public final class CborEncoder {
      */
     public void writeFloat64(double d) throws IOException {
         unsafe.writeF64(Double.doubleToLongBits(d));
+        item();
+    }
+
+    /**
+     * Write one complete, already encoded CBOR data item verbatim.
+     * <p>The bytes are not validated, and have to be encoded with the same byte order as this encoder.
+     * @throws IOException when writing to the {@code OutputStream} fails
+     * @since 1.0.0-rc.4
+     */
+    public void writeEncoded(byte @NotNull[] item, int off, int length) throws IOException {
+        unsafe.out().write(item, off, length);
+        if (unsafe.metrics != null)
+            unsafe.metrics.encodedRaw(length);
+        item();
+    }
+
+    /**
+     * @see #writeEncoded(byte[], int, int)
+     * @throws IOException when writing to the {@code OutputStream} fails
+     * @since 1.0.0-rc.4
+     */
+    public void writeEncoded(byte @NotNull[] item) throws IOException {
+        writeEncoded(item, 0, item.length);
+    }
+
+    /**
+     * Write the remaining bytes of the buffer verbatim, as one complete, already encoded CBOR data item,
+     * and advance the buffer's position to its limit.
+     * <p>If the encoder writes into a {@link CborSegmentedOutput}, large buffers are referenced instead of copied.
+     * @see #writeEncoded(byte[], int, int)
+     * @throws IOException when writing to the {@code OutputStream} fails
+     * @since 1.0.0-rc.4
+     */
+    public void writeEncoded(@NotNull ByteBuffer item) throws IOException {
+        if (unsafe.metrics != null)
+            unsafe.metrics.encodedRaw(item.remaining());
+        writeBuffer(item);
+        item();
     }
 
     /**
@@ -144,13 +225,53 @@ public final class CborEncoder {
 
     /**
      * Write a byte string (byte array)
+     * <p>If the encoder writes into a {@link CborSegmentedOutput}, large arrays are referenced instead of copied.
      * @throws IOException when writing to the {@code OutputStream} fails
      * @see #writeChunkedByteString()
      * @since 1.0.0-rc.1
      */
     public void writeByteString(byte @NotNull[] array, int off, int length) throws IOException {
         unsafe.writeBeginFinite(2, length);
-        unsafe.out.write(array, off, length);
+        if (unsafe.out() instanceof CborSegmentedOutput seg && length >= seg.referenceThreshold())
+            seg.writeReference(array, off, length);
+        else
+            unsafe.out().write(array, off, length);
+        if (unsafe.metrics != null)
+            unsafe.metrics.encodedString(length);
+        item();
+    }
+
+    /**
+     * Write the remaining bytes of the buffer as byte string, and advance the buffer's position to its limit.
+     * <p>If the encoder writes into a {@link CborSegmentedOutput}, large buffers are referenced instead of copied.
+     * @throws IOException when writing to the {@code OutputStream} fails
+     * @since 1.0.0-rc.4
+     */
+    public void writeByteString(@NotNull ByteBuffer buf) throws IOException {
+        int length = buf.remaining();
+        unsafe.writeBeginFinite(2, length);
+        writeBuffer(buf);
+        if (unsafe.metrics != null)
+            unsafe.metrics.encodedString(length);
+        item();
+    }
+
+    private void writeBuffer(@NotNull ByteBuffer buf) throws IOException {
+        int length = buf.remaining();
+        if (unsafe.out() instanceof CborSegmentedOutput seg && length >= seg.referenceThreshold()) {
+            seg.writeReference(buf);
+        } else if (buf.hasArray()) {
+            unsafe.out().write(buf.array(), buf.arrayOffset() + buf.position(), length);
+        } else {
+            var tmp = new byte[Math.min(length, 4096)];
+            var dup = buf.duplicate();
+            while (dup.hasRemaining()) {
+                int n = Math.min(tmp.length, dup.remaining());
+                dup.get(tmp, 0, n);
+                unsafe.out().write(tmp, 0, n);
+            }
+        }
+        buf.position(buf.limit());
     }
 
     /**
@@ -171,7 +292,10 @@ public final class CborEncoder {
      */
     public void writeTextUtf8(byte @NotNull[] array, int off, int length) throws IOException {
         unsafe.writeBeginFinite(3, length);
-        unsafe.out.write(array, off, length);
+        unsafe.out().write(array, off, length);
+        if (unsafe.metrics != null)
+            unsafe.metrics.encodedString(length);
+        item();
     }
 
     /**
@@ -217,6 +341,7 @@ public final class CborEncoder {
     public ChunkedByteStringWriter writeChunkedByteString() throws IOException {
         unsafe.writeBeginIndefinite(2);
         chunkedByteStringWriter.init();
+        push(FRAME_CHUNKED, -1, 0);
         return chunkedByteStringWriter;
     }
 
@@ -240,6 +365,7 @@ public final class CborEncoder {
     public ChunkedTextWriter writeChunkedText() throws IOException {
         unsafe.writeBeginIndefinite(3);
         chunkedTextWriter.init();
+        push(FRAME_CHUNKED, -1, 0);
         return chunkedTextWriter;
     }
 
@@ -294,7 +420,8 @@ public final class CborEncoder {
             if (end)
                 throw new IllegalStateException();
             unsafe.writeBreak();
-            end = false;
+            end = true;
+            pop(FRAME_CHUNKED);
         }
     }
 
@@ -359,7 +486,8 @@ public final class CborEncoder {
             if (end)
                 throw new IllegalStateException();
             unsafe.writeBreak();
-            end = false;
+            end = true;
+            pop(FRAME_CHUNKED);
         }
     }
 
@@ -381,6 +509,7 @@ public final class CborEncoder {
      */
     public void writeArray(long len) throws IOException {
         unsafe.writeBeginFinite(4, len);
+        beginDefinite(len);
     }
 
     /**
@@ -402,6 +531,7 @@ public final class CborEncoder {
      */
     public void writeMap(long numPairs) throws IOException {
         unsafe.writeBeginFinite(5, numPairs);
+        beginDefinite(numPairs << 1);
     }
 
     @NotNull
@@ -423,12 +553,13 @@ public final class CborEncoder {
      *
      * @throws IOException when writing to the {@code OutputStream} fails
      * @see #writeArray(long)
+     * @see #beginArray()
      * @since 1.0.0-rc.1
      */
     @CheckReturnValue
     public IndefiniteWriter writeArray() throws IOException {
         unsafe.writeBeginIndefinite(4);
-        indefiniteWriter.init();
+        push(FRAME_INDEFINITE, -1, 0);
         return indefiniteWriter;
     }
 
@@ -449,40 +580,181 @@ public final class CborEncoder {
      *
      * @throws IOException when writing to the {@code OutputStream} fails
      * @see #writeMap(long)
+     * @see #beginMap()
      * @since 1.0.0-rc.1
      */
     @CheckReturnValue
     public IndefiniteWriter writeMap() throws IOException {
         unsafe.writeBeginIndefinite(5);
-        indefiniteWriter.init();
+        push(FRAME_INDEFINITE, -1, 0);
         return indefiniteWriter;
     }
 
     /**
      * Don't forget to call {@code .end()}!
+     * <p>Indefinite writers can be nested, but have to be ended in reverse order.
      * @since 1.0.0-rc.1
      */
     public final class IndefiniteWriter {
-        private boolean end = true;
-
-        private void init() {
-            if (!end)
-                throw new IllegalStateException("Forgot to call IndefiniteWriter#end()");
-            end = false;
-        }
-
         private IndefiniteWriter() {}
 
         /**
-         * @throws IllegalStateException when end has already been called
+         * @throws IllegalStateException when end has already been called, or an inner item has not been ended yet
          * @throws IOException when writing to the {@code OutputStream} fails
          * @since 1.0.0-rc.1
          */
         public void end() throws IOException {
-            if (end)
+            if (depth == 0 || frameKind[depth - 1] != FRAME_INDEFINITE)
                 throw new IllegalStateException();
             unsafe.writeBreak();
-            end = false;
+            pop(FRAME_INDEFINITE);
+        }
+    }
+
+    /**
+     * Begin writing an array of currently unknown length, that will be encoded with a definite length.
+     * <p>This requires the encoder to write into a {@link CborOutputBuffer}, because the head of the array
+     * is patched in {@link #endArray()}, once the number of items is known.
+     * Arrays and maps begun this way can be nested arbitrarily, but have to be ended in reverse order.
+     * <br><br>
+     *
+     * Example:
+     * <pre><code>
+     *     encoder.beginArray();
+     *     encoder.writeSigned(1);
+     *     encoder.writeSigned(2);
+     *     encoder.endArray();
+     * </code></pre>
+     *
+     * @throws IllegalStateException when the encoder does not write into a {@link CborOutputBuffer}
+     * @throws IOException when writing to the {@code OutputStream} fails
+     * @see #writeArray()
+     * @since 1.0.0-rc.4
+     */
+    public void beginArray() throws IOException {
+        beginPatched(FRAME_ARRAY, 4);
+    }
+
+    /**
+     * End an array begun with {@link #beginArray()}
+     * @throws IllegalStateException when the innermost open item is not an array begun with {@link #beginArray()}
+     * @since 1.0.0-rc.4
+     */
+    public void endArray() {
+        endPatched(FRAME_ARRAY, 4);
+    }
+
+    /**
+     * Begin writing a map of currently unknown length, that will be encoded with a definite length.
+     * @throws IllegalStateException when the encoder does not write into a {@link CborOutputBuffer}
+     * @throws IOException when writing to the {@code OutputStream} fails
+     * @see #beginArray()
+     * @see #writeMap()
+     * @since 1.0.0-rc.4
+     */
+    public void beginMap() throws IOException {
+        beginPatched(FRAME_MAP, 5);
+    }
+
+    /**
+     * End a map begun with {@link #beginMap()}
+     * @throws IllegalStateException when the innermost open item is not a map begun with {@link #beginMap()},
+     *                               or a key was written without a value
+     * @since 1.0.0-rc.4
+     */
+    public void endMap() {
+        endPatched(FRAME_MAP, 5);
+    }
+
+    /* Stack of open items, used to count the items of arrays and maps begun with beginArray() / beginMap().
+     * Patched frames count items up, definite frames count their remaining items down and are popped once complete,
+     * indefinite frames ignore their children. */
+
+    private static final byte FRAME_ARRAY = 0;
+    private static final byte FRAME_MAP = 1;
+    private static final byte FRAME_DEFINITE = 2;
+    private static final byte FRAME_INDEFINITE = 3;
+    private static final byte FRAME_CHUNKED = 4;
+
+    private byte @NotNull [] frameKind = new byte[8];
+    private int @NotNull [] framePos = new int[8];
+    private long @NotNull [] frameCount = new long[8];
+    private int depth;
+
+    private void push(byte kind, int pos, long count) {
+        if (depth == frameKind.length) {
+            int cap = depth << 1;
+            frameKind = Arrays.copyOf(frameKind, cap);
+            framePos = Arrays.copyOf(framePos, cap);
+            frameCount = Arrays.copyOf(frameCount, cap);
+        }
+        frameKind[depth] = kind;
+        framePos[depth] = pos;
+        frameCount[depth] = count;
+        depth++;
+    }
+
+    private void pop(byte kind) {
+        if (depth == 0 || frameKind[depth - 1] != kind)
+            throw new IllegalStateException("Inner item has not been ended yet");
+        depth--;
+        item();
+    }
+
+    /** Has to be called after every complete item */
+    private void item() {
+        while (depth != 0) {
+            int top = depth - 1;
+            switch (frameKind[top]) {
+                case FRAME_ARRAY, FRAME_MAP -> {
+                    frameCount[top]++;
+                    return;
+                }
+                case FRAME_DEFINITE -> {
+                    if (--frameCount[top] > 0)
+                        return;
+                    depth = top;
+                }
+                default -> {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void beginDefinite(long numItems) {
+        if (numItems == 0)
+            item();
+        else if (depth != 0 && frameKind[depth - 1] <= FRAME_DEFINITE)
+            push(FRAME_DEFINITE, -1, numItems);
+    }
+
+    private @NotNull CborOutputBuffer patchableOut() {
+        if (unsafe.out() instanceof CborOutputBuffer buf)
+            return buf;
+        throw new IllegalStateException("The encoder has to write into a CborOutputBuffer for this");
+    }
+
+    private void beginPatched(byte kind, int major) throws IOException {
+        var buf = patchableOut();
+        push(kind, buf.size(), 0);
+        buf.write(major << 5);
+    }
+
+    private void endPatched(byte kind, int major) {
+        if (depth == 0 || frameKind[depth - 1] != kind)
+            throw new IllegalStateException("Inner item has not been ended yet");
+        long n = frameCount[depth - 1];
+        if (kind == FRAME_MAP) {
+            if ((n & 1) != 0)
+                throw new IllegalStateException("Map key without value");
+            n >>= 1;
         }
+        int len = unsafe.encodeHead(major, n);
+        patchableOut().splice(framePos[depth - 1], 1, unsafe.head(), 0, len);
+        if (unsafe.metrics != null)
+            unsafe.metrics.encodedToken(major, len);
+        depth--;
+        item();
     }
 }
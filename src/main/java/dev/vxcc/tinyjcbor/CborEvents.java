@@ -0,0 +1,136 @@
+package dev.vxcc.tinyjcbor;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Creates and commits the JFR events around operations.
+ * <pre><code>
+ *     var event = CborEvents.begin();
+ *     ... operation ...
+ *     if (event != null)
+ *         event.end("Cbor.encode", encoder, bytes, start, end);
+ * </code></pre>
+ * Instances can be started again after they ended, so a decoder keeps one for all its reads.
+ */
+final class CborEvents {
+    /* only used to check if the event types are enabled */
+    @NotNull private static final CborSlowOperationEvent SLOW = new CborSlowOperationEvent();
+    @NotNull private static final CborLargeMessageEvent LARGE = new CborLargeMessageEvent();
+
+    @NotNull private final CborSlowOperationEvent slow = new CborSlowOperationEvent();
+    @NotNull private final CborLargeMessageEvent large = new CborLargeMessageEvent();
+    @NotNull private final Counter counter = new Counter();
+
+    CborEvents() {}
+
+    /**
+     * @return true if a recording has one of the events enabled
+     */
+    static boolean enabled() {
+        return SLOW.isEnabled() || LARGE.isEnabled();
+    }
+
+    /**
+     * @return a started instance, or {@code null} if no recording has the events enabled
+     */
+    static @Nullable CborEvents begin() {
+        if (!enabled())
+            return null;
+        var events = new CborEvents();
+        events.start();
+        return events;
+    }
+
+    void start() {
+        slow.begin();
+        large.begin();
+    }
+
+    /**
+     * @param bytes the processed bytes are those between start and end. {@code null} if the data was not read from bytes
+     */
+    void end(@NotNull String operation, @NotNull Object codec, @Nullable ByteBuffer bytes, int start, int end) {
+        slow.end();
+        large.end();
+        long size = bytes == null ? 0 : end - start;
+        slow.bytes = size;
+        if (slow.shouldCommit()) {
+            fill(slow, operation, codec, bytes, start, end);
+            slow.commit();
+        }
+        large.bytes = size;
+        if (large.shouldCommit()) {
+            fill(large, operation, codec, bytes, start, end);
+            large.commit();
+        }
+    }
+
+    private void fill(@NotNull CborOperationEvent event, @NotNull String operation, @NotNull Object codec,
+                             @Nullable ByteBuffer bytes, int start, int end) {
+        event.operation = operation;
+        event.codec = codec.getClass();
+        event.items = -1;
+        event.depth = 0;
+        if (bytes == null)
+            return;
+        counter.clear();
+        try {
+            var decoder = new CborDecoder(bytes.duplicate().order(bytes.order()).limit(end).position(start));
+            while (decoder.hasNext())
+                decoder.accept(counter);
+        } catch (RuntimeException ignored) {
+            /* the operation failed on invalid data, report what was counted until there */
+        }
+        event.items = counter.items;
+        event.depth = counter.maxDepth;
+    }
+
+    private static final class Counter implements CborVisitor {
+        long items;
+        int depth;
+        int maxDepth;
+        /* chunks are not counted as items */
+        boolean inChunked;
+
+        void clear() {
+            items = 0;
+            depth = 0;
+            maxDepth = 0;
+            inChunked = false;
+        }
+
+        private void item() {
+            if (!inChunked)
+                items++;
+        }
+
+        private void enter() {
+            items++;
+            if (++depth > maxDepth)
+                maxDepth = depth;
+        }
+
+        @Override public void visitUnsigned(long value) { item(); }
+        @Override public void visitNegative(long arg) { item(); }
+        @Override public void visitBytes(@NotNull ByteBuffer bytes) { item(); }
+        @Override public void visitText(@NotNull ByteBuffer utf8) { item(); }
+        @Override public void beginChunkedBytes() { items++; inChunked = true; }
+        @Override public void endChunkedBytes() { inChunked = false; }
+        @Override public void beginChunkedText() { items++; inChunked = true; }
+        @Override public void endChunkedText() { inChunked = false; }
+        @Override public void beginArray(long length) { enter(); }
+        @Override public void endArray() { depth--; }
+        @Override public void beginMap(long pairs) { enter(); }
+        @Override public void endMap() { depth--; }
+        @Override public void visitBool(boolean value) { item(); }
+        @Override public void visitNull() { item(); }
+        @Override public void visitUndefined() { item(); }
+        @Override public void visitSimple(int value) { item(); }
+        @Override public void visitFloat16(short bits) { item(); }
+        @Override public void visitFloat32(float value) { item(); }
+        @Override public void visitFloat64(double value) { item(); }
+    }
+}
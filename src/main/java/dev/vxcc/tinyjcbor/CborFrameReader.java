@@ -0,0 +1,255 @@
+package dev.vxcc.tinyjcbor;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads CBOR messages from a byte stream, for example a {@link java.nio.channels.SocketChannel}.
+ * <p>Every message is one CBOR item, so no length prefix is needed: the end of a message is found by an incremental scanner,
+ * that only looks at the heads of the items and skips over string contents.
+ * Bytes that were already scanned are not scanned again when more data arrives.
+ * <p>Complete messages are passed to a {@link CborDecoder}, that reads a slice of the receive buffer, without copying it.
+ * <p>Works with blocking and non-blocking channels. Not thread safe.
+ * <br><br>
+ *
+ * Example:
+ * <pre><code>
+ *     var reader = new CborFrameReader(socketChannel);
+ *     CborDecoder message;
+ *     while ((message = reader.next()) != null)
+ *         handle(message.read(REQUEST));
+ * </code></pre>
+ *
+ * @see CborFrameWriter
+ * @since 1.0.0-rc.4
+ */
+public final class CborFrameReader {
+    private static final int INITIAL_BUFFER = 8192;
+    private static final long INDEFINITE = -1;
+
+    @NotNull private final ReadableByteChannel channel;
+    @NotNull private final ByteOrder byteOrder;
+    private final int maxMessageSize;
+
+    /* contains the received data from 0 until the position */
+    @NotNull private ByteBuffer buffer;
+    @NotNull private final CborDecoder decoder;
+    /* begin of the current message */
+    private int start;
+    private boolean eof;
+
+    /* scanner state */
+    private int scanned;
+    private long skip;
+    private long @NotNull [] remaining = new long[16];
+    private int depth;
+    private boolean complete;
+
+    /**
+     * @param byteOrder byte order of integers and floats
+     * @param maxMessageSize maximum number of bytes of one message. Larger messages cause an {@code IOException}
+     * @since 1.0.0-rc.4
+     */
+    public CborFrameReader(@NotNull ReadableByteChannel channel, @NotNull ByteOrder byteOrder, int maxMessageSize) {
+        if (maxMessageSize <= 0)
+            throw new IllegalArgumentException("maxMessageSize has to be positive");
+        this.channel = channel;
+        this.byteOrder = byteOrder;
+        this.maxMessageSize = maxMessageSize;
+        this.buffer = ByteBuffer.allocate(Math.min(INITIAL_BUFFER, maxMessageSize)).order(byteOrder);
+        this.decoder = new CborDecoder(ByteBuffer.allocate(0).order(byteOrder));
+    }
+
+    /**
+     * Reads big endian messages of at most 16 MiB
+     * @since 1.0.0-rc.4
+     */
+    public CborFrameReader(@NotNull ReadableByteChannel channel) {
+        this(channel, ByteOrder.BIG_ENDIAN, 16 << 20);
+    }
+
+    /**
+     * Returns the next message, reading from the channel if necessary.
+     * <p>Blocking channels are read until a message is complete.
+     * Non-blocking channels are only read as long as data is available.
+     * <p>The returned decoder is reused, and the message is only valid until the next call of this method.
+     *
+     * @return a decoder over exactly one message, or {@code null} if the stream has ended or,
+     *         for non-blocking channels, no complete message is available yet. See {@link #isEndOfStream()}
+     * @throws EOFException the stream has ended inside of a message
+     * @throws IOException the message is larger than allowed, or reading from the channel failed
+     * @throws InvalidCborException the data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public @Nullable CborDecoder next() throws IOException {
+        if (complete) {
+            start = scanned;
+            complete = false;
+        }
+        while (true) {
+            if (scan()) {
+                decoder.reset(buffer.slice(start, scanned - start).order(byteOrder));
+                return decoder;
+            }
+            if (eof) {
+                if (buffer.position() > start)
+                    throw new EOFException("Stream ended inside of a CBOR message");
+                return null;
+            }
+            makeSpace();
+            int n = channel.read(buffer);
+            if (n < 0)
+                eof = true;
+            else if (n == 0)
+                return null;
+        }
+    }
+
+    /**
+     * @return true if the stream has ended, and all messages have been returned by {@link #next()}
+     * @since 1.0.0-rc.4
+     */
+    public boolean isEndOfStream() {
+        return eof && !complete && buffer.position() == start;
+    }
+
+    private void makeSpace() throws IOException {
+        if (start == buffer.position()) {
+            buffer.clear();
+            scanned -= start;
+            start = 0;
+        }
+        if (buffer.hasRemaining())
+            return;
+        if (start > 0) {
+            buffer.flip().position(start);
+            buffer.compact();
+            scanned -= start;
+            start = 0;
+            return;
+        }
+        if (buffer.capacity() >= maxMessageSize)
+            throw tooLarge();
+        var grown = ByteBuffer.allocate((int) Math.min((long) buffer.capacity() << 1, maxMessageSize)).order(byteOrder);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    private @NotNull IOException tooLarge() {
+        return new IOException("CBOR message larger than " + maxMessageSize + " bytes");
+    }
+
+    /** continues scanning the current message, until it is complete or the received data ends */
+    private boolean scan() throws IOException {
+        int end = buffer.position();
+        while (true) {
+            if (skip > 0) {
+                int n = (int) Math.min(skip, end - scanned);
+                scanned += n;
+                skip -= n;
+                if (skip > 0)
+                    return false;
+            }
+            if (complete)
+                return true;
+            if (scanned == end)
+                return false;
+
+            int initial = buffer.get(scanned) & 0xFF;
+            int major = initial >>> 5;
+            int info = initial & 0x1F;
+            int headSize = switch (info) {
+                case 24 -> 2;
+                case 25 -> 3;
+                case 26 -> 5;
+                case 27 -> 9;
+                case 28, 29, 30 -> throw new InvalidCborException();
+                default -> 1;
+            };
+            if (end - scanned < headSize)
+                return false;
+            long arg = switch (info) {
+                case 24 -> buffer.get(scanned + 1) & 0xFFL;
+                case 25 -> buffer.getShort(scanned + 1) & 0xFFFFL;
+                case 26 -> buffer.getInt(scanned + 1) & 0xFFFFFFFFL;
+                case 27 -> buffer.getLong(scanned + 1);
+                default -> info;
+            };
+            scanned += headSize;
+            if (scanned - start > maxMessageSize)
+                throw tooLarge();
+            boolean indefinite = info == 31;
+
+            switch (major) {
+                case 0, 1, 6 -> {
+                    if (indefinite)
+                        throw new InvalidCborException();
+                    /* the tagged item follows */
+                    if (major != 6)
+                        itemDone();
+                }
+                case 2, 3 -> {
+                    if (indefinite) {
+                        push(INDEFINITE);
+                    } else {
+                        checkLength(arg);
+                        skip = arg;
+                        itemDone();
+                    }
+                }
+                case 4, 5 -> {
+                    if (indefinite) {
+                        push(INDEFINITE);
+                    } else {
+                        checkLength(arg);
+                        long items = major == 5 ? arg << 1 : arg;
+                        if (items == 0)
+                            itemDone();
+                        else
+                            push(items);
+                    }
+                }
+                default -> {
+                    if (indefinite) {
+                        if (depth == 0 || remaining[depth - 1] != INDEFINITE)
+                            throw new InvalidCborException();
+                        depth--;
+                    }
+                    itemDone();
+                }
+            }
+        }
+    }
+
+    /** every item needs at least one byte, so the argument can not be larger than the remaining allowed size */
+    private void checkLength(long arg) throws IOException {
+        if (arg < 0 || arg > maxMessageSize - (scanned - start))
+            throw tooLarge();
+    }
+
+    private void push(long items) {
+        if (depth == remaining.length)
+            remaining = Arrays.copyOf(remaining, depth << 1);
+        remaining[depth++] = items;
+    }
+
+    private void itemDone() {
+        while (true) {
+            if (depth == 0) {
+                complete = true;
+                return;
+            }
+            if (remaining[depth - 1] == INDEFINITE || --remaining[depth - 1] > 0)
+                return;
+            depth--;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package dev.vxcc.tinyjcbor;
+
+import dev.vxcc.tinyjcbor.serde.CborSerializer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes CBOR messages to a byte stream, for example a {@link java.nio.channels.SocketChannel}.
+ * <p>Every message is one CBOR item, that can be read again with a {@link CborFrameReader}.
+ * Messages are encoded into a send buffer, and only written to the channel on {@link #flush()},
+ * so several messages are sent with one write.
+ * <p>Works with blocking and non-blocking channels. Not thread safe.
+ * <br><br>
+ *
+ * Example:
+ * <pre><code>
+ *     var writer = new CborFrameWriter(socketChannel);
+ *     for (var response : responses)
+ *         writer.write(RESPONSE, response);
+ *     writer.flush();
+ * </code></pre>
+ *
+ * @see CborFrameReader
+ * @since 1.0.0-rc.4
+ */
+public final class CborFrameWriter {
+    private static final byte @NotNull [] NONE = new byte[0];
+
+    @NotNull private final WritableByteChannel channel;
+    @NotNull private final CborOutputBuffer out = new CborOutputBuffer(8192);
+    @NotNull private final CborEncoder encoder;
+
+    /**
+     * @param byteOrder byte order of integers and floats
+     * @since 1.0.0-rc.4
+     */
+    public CborFrameWriter(@NotNull WritableByteChannel channel, @NotNull ByteOrder byteOrder) {
+        this.channel = channel;
+        this.encoder = new CborEncoder(byteOrder, out);
+    }
+
+    /**
+     * Writes big endian messages
+     * @since 1.0.0-rc.4
+     */
+    public CborFrameWriter(@NotNull WritableByteChannel channel) {
+        this(channel, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Encodes one message into the send buffer. The serializer has to write exactly one item.
+     * <p>If the serializer fails, the partially encoded message is discarded.
+     * @throws IOException when the serializer fails
+     * @since 1.0.0-rc.4
+     */
+    public <T> void write(@NotNull CborSerializer<T> ser, T value) throws IOException {
+        int begin = out.size();
+        try {
+            encoder.write(ser, value);
+        } catch (Throwable e) {
+            discardFrom(begin);
+            throw e;
+        }
+    }
+
+    /**
+     * Appends one already encoded message to the send buffer.
+     * @param encoded exactly one item, with the byte order of this writer
+     * @since 1.0.0-rc.4
+     */
+    public void writeEncoded(@NotNull ByteBuffer encoded) throws IOException {
+        encoder.writeEncoded(encoded);
+    }
+
+    private void discardBefore(int end) {
+        out.splice(0, end, NONE, 0, 0);
+        encoder.reset(out);
+    }
+
+    private void discardFrom(int begin) {
+        out.splice(begin, out.size() - begin, NONE, 0, 0);
+        encoder.reset(out);
+    }
+
+    /**
+     * @return number of bytes, that have not been written to the channel yet
+     * @since 1.0.0-rc.4
+     */
+    public int pending() {
+        return out.size();
+    }
+
+    /**
+     * Writes the send buffer to the channel.
+     * <p>Blocking channels are written until the send buffer is empty.
+     * Non-blocking channels are only written as long as they accept data, and the rest is moved to the front of the send buffer,
+     * so the buffer only grows with the unsent bytes.
+     *
+     * @return true if all messages have been written
+     * @throws IOException writing to the channel failed
+     * @since 1.0.0-rc.4
+     */
+    public boolean flush() throws IOException {
+        if (pending() == 0)
+            return true;
+        var buf = out.asByteBuffer();
+        while (buf.hasRemaining() && channel.write(buf) > 0);
+        if (!buf.hasRemaining()) {
+            out.reset();
+            return true;
+        }
+        discardBefore(buf.position());
+        return false;
+    }
+}
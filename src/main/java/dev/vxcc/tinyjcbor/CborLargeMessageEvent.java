@@ -0,0 +1,87 @@
+package dev.vxcc.tinyjcbor;
+
+import jdk.jfr.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Recorded for decode and encode operations on at least {@code minSize} bytes, 1 MB unless configured otherwise:
+ * <pre><code>
+ *     java -XX:StartFlightRecording:dev.vxcc.tinyjcbor.LargeMessage#minSize=64kB ...
+ * </code></pre>
+ *
+ * @since 1.0.0-rc.4
+ */
+@Name("dev.vxcc.tinyjcbor.LargeMessage")
+@Label("Large CBOR Message")
+public final class CborLargeMessageEvent extends CborOperationEvent {
+    CborLargeMessageEvent() {}
+
+    @Name("minSize")
+    @Label("Minimum Size")
+    @SettingDefinition
+    boolean minSize(@NotNull MinSize setting) {
+        return bytes >= setting.bytes;
+    }
+
+    /**
+     * Setting for the minimum size of recorded messages, in bytes, or with one of the units B, kB, MB or GB
+     * @since 1.0.0-rc.4
+     */
+    public static final class MinSize extends SettingControl {
+        private static final Pattern SIZE = Pattern.compile("\\s*(\\d+)\\s*(B|bytes|kB|MB|GB)?\\s*");
+        private static final String DEFAULT = "1 MB";
+
+        private String value = DEFAULT;
+        private long bytes = parse(DEFAULT);
+
+        public MinSize() {}
+
+        private static long parse(@NotNull String value) {
+            var m = SIZE.matcher(value);
+            if (!m.matches())
+                return -1;
+            long n = Long.parseLong(m.group(1));
+            var unit = m.group(2);
+            if (unit == null)
+                return n;
+            return switch (unit) {
+                case "kB" -> n << 10;
+                case "MB" -> n << 20;
+                case "GB" -> n << 30;
+                default -> n;
+            };
+        }
+
+        /** the smallest of the values requested by the running recordings */
+        @Override
+        public String combine(Set<String> values) {
+            String min = null;
+            long minBytes = Long.MAX_VALUE;
+            for (var v : values) {
+                long b = parse(v);
+                if (b >= 0 && b < minBytes) {
+                    minBytes = b;
+                    min = v;
+                }
+            }
+            return min == null ? DEFAULT : min;
+        }
+
+        @Override
+        public void setValue(String value) {
+            long b = parse(value);
+            if (b < 0)
+                return;
+            this.value = value;
+            this.bytes = b;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+    }
+}
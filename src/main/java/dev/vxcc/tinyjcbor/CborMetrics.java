@@ -0,0 +1,184 @@
+package dev.vxcc.tinyjcbor;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of what decoders and encoders do, for monitoring.
+ * <p>Metrics are off by default. They are enabled per instance with {@link CborDecoder#setMetrics(CborMetrics)}
+ * and {@link CborEncoder#setMetrics(CborMetrics)}; without them, decoders and encoders only check a field for {@code null}.
+ * <p>One instance can be shared by any number of decoders and encoders on different threads:
+ * the counters are striped ({@link LongAdder}), so threads do not contend on them.
+ * <p>Tokens read again after backtracking, for example by {@link dev.vxcc.tinyjcbor.serde.CborVariantDecoder}, are counted again.
+ * <br><br>
+ *
+ * Example, exporting the metrics of all decoders with JMX:
+ * <pre><code>
+ *     static final CborMetrics METRICS = new CborMetrics();
+ *     static { METRICS.registerMBean("server"); }
+ *
+ *     var decoder = new CborDecoder(buffer);
+ *     decoder.setMetrics(METRICS);
+ * </code></pre>
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborMetrics implements CborMetricsMXBean {
+    private static final String @NotNull [] MAJOR_TYPES = {
+            "UnsignedInteger", "NegativeInteger", "ByteString", "Text", "Array", "Map", "Tag", "SimpleOrFloat"
+    };
+
+    @NotNull private final LongAdder decodedBytes = new LongAdder();
+    @NotNull private final LongAdder decodedStringBytes = new LongAdder();
+    @NotNull private final LongAdder @NotNull [] decodedTokens = adders();
+    @NotNull private final LongAdder encodedBytes = new LongAdder();
+    @NotNull private final LongAdder encodedStringBytes = new LongAdder();
+    @NotNull private final LongAdder @NotNull [] encodedTokens = adders();
+    @NotNull private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    @NotNull private final ConcurrentHashMap<String, LongAdder> exceptions = new ConcurrentHashMap<>();
+    @NotNull private final LongAdder variantBacktracks = new LongAdder();
+
+    private static @NotNull LongAdder @NotNull [] adders() {
+        var adders = new LongAdder[MAJOR_TYPES.length];
+        for (int i = 0; i < adders.length; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    /**
+     * @param stringBytes length of the contents, if the token is a definite length string
+     */
+    void decodedToken(int major, int headBytes, long stringBytes) {
+        decodedTokens[major].increment();
+        decodedBytes.add(headBytes + stringBytes);
+        if (stringBytes != 0)
+            decodedStringBytes.add(stringBytes);
+    }
+
+    void encodedToken(int major, int headBytes) {
+        encodedTokens[major].increment();
+        encodedBytes.add(headBytes);
+    }
+
+    void encodedString(long length) {
+        encodedBytes.add(length);
+        encodedStringBytes.add(length);
+    }
+
+    /** already encoded items */
+    void encodedRaw(long length) {
+        encodedBytes.add(length);
+    }
+
+    void depth(int depth) {
+        maxDepth.accumulate(depth);
+    }
+
+    void exception(@NotNull RuntimeException e) {
+        exceptions.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Count one candidate of a variant decoder, that did not match.
+     * Called by {@link dev.vxcc.tinyjcbor.serde.CborVariantDecoder}, and can be called by custom deserializers that backtrack.
+     * @since 1.0.0-rc.4
+     */
+    public void variantBacktrack() {
+        variantBacktracks.increment();
+    }
+
+    @Override
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    @Override
+    public long getDecodedStringBytes() {
+        return decodedStringBytes.sum();
+    }
+
+    @Override
+    public @NotNull Map<String, Long> getDecodedTokens() {
+        return sums(decodedTokens);
+    }
+
+    @Override
+    public long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    @Override
+    public long getEncodedStringBytes() {
+        return encodedStringBytes.sum();
+    }
+
+    @Override
+    public @NotNull Map<String, Long> getEncodedTokens() {
+        return sums(encodedTokens);
+    }
+
+    private static @NotNull Map<String, Long> sums(@NotNull LongAdder @NotNull [] adders) {
+        var out = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < adders.length; i++)
+            out.put(MAJOR_TYPES[i], adders[i].sum());
+        return out;
+    }
+
+    @Override
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    @Override
+    public @NotNull Map<String, Long> getExceptions() {
+        var out = new TreeMap<String, Long>();
+        exceptions.forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+
+    @Override
+    public long getVariantBacktracks() {
+        return variantBacktracks.sum();
+    }
+
+    /**
+     * Set all counters to zero. Counts of concurrent operations might be lost.
+     * @since 1.0.0-rc.4
+     */
+    @Override
+    public void reset() {
+        decodedBytes.reset();
+        decodedStringBytes.reset();
+        encodedBytes.reset();
+        encodedStringBytes.reset();
+        for (var a : decodedTokens)
+            a.reset();
+        for (var a : encodedTokens)
+            a.reset();
+        maxDepth.reset();
+        exceptions.clear();
+        variantBacktracks.reset();
+    }
+
+    /**
+     * Register these metrics with the platform MBean server, as {@code dev.vxcc.tinyjcbor:type=CborMetrics,name=<name>}.
+     * <p>Unregister with {@code ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName)}.
+     * @return the name it was registered as
+     * @throws JMException the name is invalid, or already registered
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull ObjectName registerMBean(@NotNull String name) throws JMException {
+        var objectName = new ObjectName("dev.vxcc.tinyjcbor:type=CborMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+}
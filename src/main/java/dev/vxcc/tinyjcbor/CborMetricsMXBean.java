@@ -0,0 +1,70 @@
+package dev.vxcc.tinyjcbor;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CborMetrics}
+ *
+ * @since 1.0.0-rc.4
+ */
+public interface CborMetricsMXBean {
+    /**
+     * Bytes of heads and definite length strings read by decoders
+     * @since 1.0.0-rc.4
+     */
+    long getDecodedBytes();
+
+    /**
+     * Bytes of definite length strings read by decoders, including chunks
+     * @since 1.0.0-rc.4
+     */
+    long getDecodedStringBytes();
+
+    /**
+     * Tokens read by decoders, by major type
+     * @since 1.0.0-rc.4
+     */
+    Map<String, Long> getDecodedTokens();
+
+    /**
+     * Bytes written by encoders
+     * @since 1.0.0-rc.4
+     */
+    long getEncodedBytes();
+
+    /**
+     * Bytes of strings written by encoders, including chunks
+     * @since 1.0.0-rc.4
+     */
+    long getEncodedStringBytes();
+
+    /**
+     * Tokens written by encoders, by major type
+     * @since 1.0.0-rc.4
+     */
+    Map<String, Long> getEncodedTokens();
+
+    /**
+     * Deepest nesting of arrays and maps seen by decoders
+     * @since 1.0.0-rc.4
+     */
+    long getMaxDepth();
+
+    /**
+     * Exceptions thrown out of {@link CborDecoder#read(dev.vxcc.tinyjcbor.serde.CborDeserializer)}, by class
+     * @since 1.0.0-rc.4
+     */
+    Map<String, Long> getExceptions();
+
+    /**
+     * Candidates of variant decoders, that did not match, after which the decoder went back to the start of the item
+     * @since 1.0.0-rc.4
+     */
+    long getVariantBacktracks();
+
+    /**
+     * Set all counters to zero
+     * @since 1.0.0-rc.4
+     */
+    void reset();
+}
@@ -0,0 +1,37 @@
+package dev.vxcc.tinyjcbor;
+
+import jdk.jfr.*;
+
+/**
+ * Fields of the Java Flight Recorder events of tinyjcbor, see {@link CborSlowOperationEvent} and {@link CborLargeMessageEvent}.
+ * <p>Events are only created while a recording has one of them enabled, so they cost nothing otherwise.
+ * Items and depth are counted by scanning the bytes again, and only for events that are recorded.
+ * Reads nested in another read of the same decoder are part of the outer event, and are not recorded on their own.
+ *
+ * @since 1.0.0-rc.4
+ */
+@Category("tinyjcbor")
+@StackTrace(true)
+public abstract class CborOperationEvent extends Event {
+    @Label("Operation")
+    @Description("Cbor.decode, Cbor.encode, CborSeq.next or CborDecoder.read")
+    public String operation;
+
+    @Label("Codec")
+    @Description("Class of the deserializer or serializer")
+    public Class<?> codec;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Items")
+    @Description("Number of data items, including nested items. -1 if the data was not read from bytes")
+    public long items;
+
+    @Label("Depth")
+    @Description("Deepest nesting of arrays and maps")
+    public int depth;
+
+    CborOperationEvent() {}
+}
@@ -0,0 +1,121 @@
+package dev.vxcc.tinyjcbor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable in-memory output for a {@link CborEncoder}.
+ * <p>Unlike {@code ByteArrayOutputStream}, already written bytes can be patched, which is required by
+ * {@link CborEncoder#beginArray()} and {@link CborEncoder#beginMap()}.
+ * <p>Not thread safe.
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborOutputBuffer extends OutputStream {
+    private byte @NotNull [] buf;
+    private int count;
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public CborOutputBuffer() {
+        this(256);
+    }
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public CborOutputBuffer(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException();
+        this.buf = new byte[initialCapacity];
+    }
+
+    private void ensureCapacity(int extra) {
+        int min = count + extra;
+        if (min < 0)
+            throw new OutOfMemoryError("CborOutputBuffer too large");
+        if (min <= buf.length)
+            return;
+        int cap = Math.max(buf.length << 1, min);
+        if (cap < 0)
+            cap = Integer.MAX_VALUE - 8;
+        buf = Arrays.copyOf(buf, cap);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) {
+        if ((off | len) < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        ensureCapacity(len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Replace {@code removed} bytes at {@code pos} with {@code len} bytes from {@code src},
+     * moving everything after it if the lengths differ.
+     */
+    void splice(int pos, int removed, byte @NotNull [] src, int off, int len) {
+        if (pos < 0 || removed < 0 || pos + removed > count)
+            throw new IndexOutOfBoundsException();
+        int diff = len - removed;
+        if (diff > 0)
+            ensureCapacity(diff);
+        if (diff != 0)
+            System.arraycopy(buf, pos + removed, buf, pos + len, count - pos - removed);
+        System.arraycopy(src, off, buf, pos, len);
+        count += diff;
+    }
+
+    /**
+     * @return the number of bytes written so far
+     * @since 1.0.0-rc.4
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Discard all written bytes, but keep the allocated memory
+     * @since 1.0.0-rc.4
+     */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * @return a copy of the written bytes
+     * @since 1.0.0-rc.4
+     */
+    public byte @NotNull [] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    /**
+     * Wraps the written bytes without copying them.
+     * <p>The returned buffer is only valid until the next write to, or reset of this output.
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count).slice();
+    }
+
+    /**
+     * Write all written bytes into the given stream
+     * @since 1.0.0-rc.4
+     */
+    public void writeTo(@NotNull OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+}
@@ -0,0 +1,204 @@
+package dev.vxcc.tinyjcbor;
+
+import dev.vxcc.tinyjcbor.serde.CborDeserializer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the items of a CBOR sequence (RFC 8742), that is read from a blocking channel or input stream.
+ * <p>Reading and decoding happens on the given executor, and only as far as requested by the subscriber:
+ * without demand, nothing is read. The items are found with a {@link CborFrameReader}, so the input is scanned once,
+ * and items larger than the maximum item size fail the subscription with an {@code IOException}.
+ * <p>The input can only be read once, so there can only be one subscriber. The input is closed when the sequence ends,
+ * on errors, and on cancellation.
+ *
+ * <pre><code>
+ *     var publisher = new CborPublisher&lt;&gt;(channel, RECORD, Executors.newVirtualThreadPerTaskExecutor());
+ *     publisher.subscribe(subscriber);
+ * </code></pre>
+ *
+ * @param <T> type of the items
+ * @since 1.0.0-rc.4
+ */
+public final class CborPublisher<T> implements Flow.Publisher<T> {
+    private static final int DEFAULT_MAX_ITEM_SIZE = 16 << 20;
+
+    @NotNull private final ReadableByteChannel channel;
+    @NotNull private final CborDeserializer<T> item;
+    @NotNull private final Executor executor;
+    @NotNull private final ByteOrder byteOrder;
+    private final int maxItemSize;
+    @NotNull private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param channel has to be blocking
+     * @param byteOrder byte order of integers and floats
+     * @param maxItemSize maximum number of bytes of one item
+     * @since 1.0.0-rc.4
+     */
+    public CborPublisher(@NotNull ReadableByteChannel channel, @NotNull CborDeserializer<T> item,
+                         @NotNull Executor executor, @NotNull ByteOrder byteOrder, int maxItemSize) {
+        if (maxItemSize <= 0)
+            throw new IllegalArgumentException("maxItemSize has to be positive");
+        this.channel = channel;
+        this.item = item;
+        this.executor = executor;
+        this.byteOrder = byteOrder;
+        this.maxItemSize = maxItemSize;
+    }
+
+    /**
+     * Reads items of at most 16 MiB
+     * @param channel has to be blocking
+     * @param byteOrder byte order of integers and floats
+     * @since 1.0.0-rc.4
+     */
+    public CborPublisher(@NotNull ReadableByteChannel channel, @NotNull CborDeserializer<T> item,
+                         @NotNull Executor executor, @NotNull ByteOrder byteOrder) {
+        this(channel, item, executor, byteOrder, DEFAULT_MAX_ITEM_SIZE);
+    }
+
+    /**
+     * Reads big endian items of at most 16 MiB
+     * @param channel has to be blocking
+     * @since 1.0.0-rc.4
+     */
+    public CborPublisher(@NotNull ReadableByteChannel channel, @NotNull CborDeserializer<T> item, @NotNull Executor executor) {
+        this(channel, item, executor, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Reads big endian items of at most 16 MiB
+     * @since 1.0.0-rc.4
+     */
+    public CborPublisher(@NotNull InputStream in, @NotNull CborDeserializer<T> item, @NotNull Executor executor) {
+        this(Channels.newChannel(in), item, executor, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * @throws NullPointerException the subscriber is {@code null}, see rule 1.9 of Reactive Streams
+     */
+    @Override
+    public void subscribe(@NotNull Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {}
+
+                @Override
+                public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException("CborPublisher only supports one subscriber"));
+            return;
+        }
+        var subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        @NotNull private final Flow.Subscriber<? super T> subscriber;
+        @NotNull private final AtomicLong demand = new AtomicLong();
+        /* number of signals not yet handled by the drain loop */
+        @NotNull private final AtomicInteger wip = new AtomicInteger();
+        @NotNull private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private volatile long invalidRequest;
+
+        /* only accessed by the drain loop */
+        @NotNull private final CborFrameReader reader;
+
+        Subscription(@NotNull Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+            this.reader = new CborFrameReader(channel, byteOrder, maxItemSize);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = n;
+            } else {
+                long prev, next;
+                do {
+                    prev = demand.get();
+                    next = prev + n < 0 ? Long.MAX_VALUE : prev + n;
+                } while (!demand.compareAndSet(prev, next));
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            close();
+        }
+
+        private void signal() {
+            if (wip.getAndIncrement() == 0)
+                executor.execute(this::drain);
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+
+        private void fail(@NotNull Throwable e) {
+            cancelled = true;
+            close();
+            subscriber.onError(e);
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                if (!cancelled && invalidRequest != 0) {
+                    fail(new IllegalArgumentException("Requested " + invalidRequest + " items, which violates rule 3.9 of Reactive Streams"));
+                    return;
+                }
+                while (!cancelled && demand.get() > 0) {
+                    T value;
+                    try {
+                        var decoder = reader.next();
+                        if (decoder == null) {
+                            if (!reader.isEndOfStream())
+                                throw new IllegalStateException("CborPublisher needs a blocking channel");
+                            cancelled = true;
+                            close();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        value = item.next(decoder);
+                    } catch (Throwable e) {
+                        fail(e);
+                        return;
+                    }
+                    demand.decrementAndGet();
+                    try {
+                        subscriber.onNext(value);
+                    } catch (Throwable e) {
+                        cancel();
+                        return;
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0)
+                    return;
+            }
+        }
+    }
+}
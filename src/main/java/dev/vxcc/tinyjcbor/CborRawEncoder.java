@@ -1,11 +1,13 @@
 package dev.vxcc.tinyjcbor;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * Only use this if you know the details of CBOR.
@@ -15,18 +17,66 @@ import java.nio.ByteOrder;
  * @since 1.0.0-rc.1
  */
 public final class CborRawEncoder {
+    /**
+     * Changed by {@link CborEncoder#reset(OutputStream)}
+     * @deprecated use {@link #out()}, the field is replaced when the encoder is reset
+     */
+    @Deprecated
     @NotNull
-    public final OutputStream out;
+    public OutputStream out;
     @NotNull
     private final ByteBuffer _temp;
     private final byte @NotNull [] _buf8;
+    private final byte @NotNull [] _head;
+    @NotNull
+    private final ByteBuffer _headBuf;
+    @NotNull
+    private final ByteOrder byteOrder;
+    /** Set by {@link CborEncoder#setMetrics(CborMetrics)} */
+    @Nullable
+    CborMetrics metrics;
 
     public CborRawEncoder(@NotNull ByteOrder byteOrder, @NotNull OutputStream out) {
         this.out = out;
+        this.byteOrder = byteOrder;
 
         this._temp = ByteBuffer.allocate(8);
         this._temp.order(byteOrder);
         this._buf8 = new byte[8];
+        this._head = new byte[9];
+        this._headBuf = ByteBuffer.wrap(_head);
+        this._headBuf.order(byteOrder);
+    }
+
+    /**
+     * @return the output stream written to
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull OutputStream out() {
+        return out;
+    }
+
+    void setOut(@NotNull OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @return the byte order used for integers and floats
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull ByteOrder byteOrder() {
+        return byteOrder;
+    }
+
+    /**
+     * Write already encoded bytes verbatim, for example pre-encoded heads.
+     * <p>The bytes have to be encoded with the same {@link #byteOrder()}.
+     * @since 1.0.0-rc.4
+     */
+    public void writeRaw(byte @NotNull [] encoded) throws IOException {
+        out.write(encoded);
+        if (metrics != null)
+            metrics.encodedRaw(encoded.length);
     }
 
     private void writeShort(short s) throws IOException {
@@ -57,27 +107,72 @@ public final class CborRawEncoder {
         if (major > 0b111 || major < 0 || additional < 0 || additional > 0b11111)
             throw new IllegalArgumentException();
         out.write((major << 5) | additional);
-    }
-
-    private void writeTokenWithArg(int major, long arg) throws IOException {
-        if (arg < 0 || arg > Integer.MAX_VALUE) {
-            writeTokenHeader(major, 27);
-            writeLong(arg);
+        if (metrics != null)
+            metrics.encodedToken(major, switch (additional) {
+                case 24 -> 2;
+                case 25 -> 3;
+                case 26 -> 5;
+                case 27 -> 9;
+                default -> 1;
+            });
+    }
+
+    /**
+     * Encode the shortest head for the given major type and argument into {@code _head}
+     * @return number of bytes used
+     */
+    int encodeHead(int major, long arg) {
+        if (major > 0b111 || major < 0)
+            throw new IllegalArgumentException();
+        int m = major << 5;
+        if (arg >= 0 && arg < 24) {
+            _head[0] = (byte) (m | (int) arg);
+            return 1;
         }
-        else if (arg > Short.MAX_VALUE) {
-            writeTokenHeader(major, 26);
-            writeInt((int) arg);
+        if (arg >= 0 && arg <= 0xFF) {
+            _head[0] = (byte) (m | 24);
+            _head[1] = (byte) arg;
+            return 2;
         }
-        else if (arg > Byte.MAX_VALUE) {
-            writeTokenHeader(major, 25);
-            writeShort((short) arg);
+        if (arg >= 0 && arg <= 0xFFFF) {
+            _head[0] = (byte) (m | 25);
+            _headBuf.putShort(1, (short) arg);
+            return 3;
         }
-        else if (arg > 24) {
-            writeTokenHeader(major, 24);
-            out.write((int) arg);
-        } else {
-            writeTokenHeader(major, (int) arg);
+        if (arg >= 0 && arg <= 0xFFFFFFFFL) {
+            _head[0] = (byte) (m | 26);
+            _headBuf.putInt(1, (int) arg);
+            return 5;
         }
+        _head[0] = (byte) (m | 27);
+        _headBuf.putLong(1, arg);
+        return 9;
+    }
+
+    /**
+     * Encode the shortest head for the given major type and argument, for writing it later with {@link #writeRaw(byte[])}
+     * @param arg treated as unsigned integer
+     * @since 1.0.0-rc.4
+     */
+    public static byte @NotNull [] encodeHead(@NotNull ByteOrder byteOrder, int major, long arg) {
+        var enc = new CborRawEncoder(byteOrder, OutputStream.nullOutputStream());
+        int len = enc.encodeHead(major, arg);
+        return Arrays.copyOf(enc._head, len);
+    }
+
+    /** Bytes of the last {@link #encodeHead(int, long)} */
+    byte @NotNull [] head() {
+        return _head;
+    }
+
+    private void writeTokenWithArg(int major, long arg) throws IOException {
+        int len = encodeHead(major, arg);
+        if (len == 1)
+            out.write(_head[0]);
+        else
+            out.write(_head, 0, len);
+        if (metrics != null)
+            metrics.encodedToken(major, len);
     }
 
     public void writeBreak() throws IOException {
@@ -0,0 +1,220 @@
+package dev.vxcc.tinyjcbor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Output for a {@link CborEncoder}, that builds a list of segments instead of one contiguous array.
+ * <p>Small writes are copied into fixed-size chunks, which are recycled on {@link #reset()}.
+ * Byte strings of at least {@code referenceThreshold} bytes written with {@link CborEncoder#writeByteString(byte[], int, int)}
+ * or {@link CborEncoder#writeByteString(ByteBuffer)} are not copied, but referenced.
+ * Because of that, such arrays and buffers must not be modified until this output has been consumed.
+ * <p>The result can be written with a single gathering write, see {@link #writeTo(GatheringByteChannel)}, or merged once with {@link #toByteArray()}.
+ * <p>Not thread safe.
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborSegmentedOutput extends OutputStream {
+    private final int chunkSize;
+    private final int referenceThreshold;
+
+    @NotNull private final ArrayList<ByteBuffer> segments = new ArrayList<>();
+    @NotNull private final ArrayList<byte[]> usedChunks = new ArrayList<>();
+    @NotNull private final ArrayDeque<byte[]> freeChunks = new ArrayDeque<>();
+
+    private byte[] chunk;
+    /** start of the bytes in the current chunk, that are not part of {@code segments} yet */
+    private int chunkStart;
+    private int chunkPos;
+    private long size;
+
+    /**
+     * Uses 8 KiB chunks, and references byte strings of at least 4 KiB
+     * @since 1.0.0-rc.4
+     */
+    public CborSegmentedOutput() {
+        this(8192, 4096);
+    }
+
+    /**
+     * @param chunkSize size of the chunks small writes are copied into
+     * @param referenceThreshold minimum length of byte strings that are referenced instead of copied
+     * @since 1.0.0-rc.4
+     */
+    public CborSegmentedOutput(int chunkSize, int referenceThreshold) {
+        if (chunkSize <= 0 || referenceThreshold < 0)
+            throw new IllegalArgumentException();
+        this.chunkSize = chunkSize;
+        this.referenceThreshold = referenceThreshold;
+    }
+
+    /**
+     * @return minimum length of byte strings that are referenced instead of copied
+     * @since 1.0.0-rc.4
+     */
+    public int referenceThreshold() {
+        return referenceThreshold;
+    }
+
+    private void sealChunk() {
+        if (chunkPos != chunkStart) {
+            segments.add(ByteBuffer.wrap(chunk, chunkStart, chunkPos - chunkStart).slice());
+            chunkStart = chunkPos;
+        }
+    }
+
+    private void nextChunk() {
+        sealChunk();
+        var next = freeChunks.poll();
+        if (next == null)
+            next = new byte[chunkSize];
+        usedChunks.add(next);
+        chunk = next;
+        chunkStart = 0;
+        chunkPos = 0;
+    }
+
+    @Override
+    public void write(int b) {
+        if (chunk == null || chunkPos == chunk.length)
+            nextChunk();
+        chunk[chunkPos++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) {
+        if ((off | len) < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        size += len;
+        while (len > 0) {
+            if (chunk == null || chunkPos == chunk.length)
+                nextChunk();
+            int n = Math.min(len, chunk.length - chunkPos);
+            System.arraycopy(b, off, chunk, chunkPos, n);
+            chunkPos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Append the remaining bytes of the buffer without copying them.
+     * <p>The position of {@code buf} is not changed.
+     * @since 1.0.0-rc.4
+     */
+    public void writeReference(@NotNull ByteBuffer buf) {
+        if (!buf.hasRemaining())
+            return;
+        sealChunk();
+        segments.add(buf.slice());
+        size += buf.remaining();
+    }
+
+    /**
+     * Append the bytes without copying them.
+     * @since 1.0.0-rc.4
+     */
+    public void writeReference(byte @NotNull [] b, int off, int len) {
+        writeReference(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * @return total number of bytes written
+     * @since 1.0.0-rc.4
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return read-only views of all segments, in order. Only valid until the next write to, or reset of this output.
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull ByteBuffer @NotNull [] toByteBuffers() {
+        sealChunk();
+        var out = new ByteBuffer[segments.size()];
+        for (int i = 0; i < out.length; i++)
+            out[i] = segments.get(i).asReadOnlyBuffer();
+        return out;
+    }
+
+    /**
+     * Write all segments to the channel, using gathering writes
+     * @return number of bytes written
+     * @throws IOException when writing to the channel fails
+     * @since 1.0.0-rc.4
+     */
+    public long writeTo(@NotNull GatheringByteChannel channel) throws IOException {
+        var bufs = toByteBuffers();
+        long total = 0;
+        int first = 0;
+        while (first < bufs.length) {
+            total += channel.write(bufs, first, bufs.length - first);
+            while (first < bufs.length && !bufs[first].hasRemaining())
+                first++;
+        }
+        return total;
+    }
+
+    /**
+     * Write all segments into the given stream
+     * @throws IOException when writing to the stream fails
+     * @since 1.0.0-rc.4
+     */
+    public void writeTo(@NotNull OutputStream out) throws IOException {
+        sealChunk();
+        for (var seg : segments) {
+            if (seg.hasArray()) {
+                out.write(seg.array(), seg.arrayOffset() + seg.position(), seg.remaining());
+            } else {
+                var tmp = new byte[Math.min(seg.remaining(), chunkSize)];
+                var dup = seg.duplicate();
+                while (dup.hasRemaining()) {
+                    int n = Math.min(tmp.length, dup.remaining());
+                    dup.get(tmp, 0, n);
+                    out.write(tmp, 0, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge all segments into one array
+     * @throws OutOfMemoryError when more than {@code Integer.MAX_VALUE} bytes have been written
+     * @since 1.0.0-rc.4
+     */
+    public byte @NotNull [] toByteArray() {
+        if (size > Integer.MAX_VALUE - 8)
+            throw new OutOfMemoryError("CborSegmentedOutput too large for an array");
+        sealChunk();
+        var out = new byte[(int) size];
+        int pos = 0;
+        for (var seg : segments) {
+            int n = seg.remaining();
+            seg.get(seg.position(), out, pos, n);
+            pos += n;
+        }
+        return out;
+    }
+
+    /**
+     * Drop all segments and references, and recycle the chunks for future writes
+     * @since 1.0.0-rc.4
+     */
+    public void reset() {
+        segments.clear();
+        freeChunks.addAll(usedChunks);
+        usedChunks.clear();
+        chunk = null;
+        chunkStart = 0;
+        chunkPos = 0;
+        size = 0;
+    }
+}
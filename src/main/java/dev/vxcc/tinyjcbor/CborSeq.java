@@ -5,12 +5,18 @@ import org.jetbrains.annotations.NotNull;
 
 import java.nio.ByteBuffer;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class CborSeq {
+    @NotNull private final ByteBuffer buffer;
     @NotNull private final CborDecoder decoder;
     @NotNull private final CborDecoder.Snapshot snapshot = new CborDecoder.Snapshot();
 
     public CborSeq(@NotNull ByteBuffer buffer) {
+        this.buffer = buffer;
         this.decoder = new CborDecoder(buffer);
     }
 
@@ -22,13 +28,90 @@ public class CborSeq {
         if (!decoder.hasNext())
             throw new NoSuchElementException();
         snapshot.from(decoder);
-        T parsed;
         try {
-            parsed = item.next(decoder);
+            return decoder.read("CborSeq.next", item);
         } catch (Throwable e) {
-            decoder.reset(snapshot);
+            decoder.rewind(snapshot);
             throw e;
         }
-        return parsed;
+    }
+
+    /**
+     * Stream of the remaining items. Does not advance this sequence.
+     * <p>The stream can be processed in {@linkplain Stream#parallel() parallel}: it is split by skipping items up to the middle
+     * of the remaining bytes, without decoding them, and each part is decoded with its own decoder over a duplicate of the buffer.
+     * The deserializer has to be thread safe then.
+     *
+     * <pre><code>
+     *     long errors = new CborSeq(buffer).stream(LOG_ENTRY)
+     *         .parallel()
+     *         .filter(LogEntry::isError)
+     *         .count();
+     * </code></pre>
+     *
+     * @throws UnexpectedCborException (when consuming the stream) an item does not match
+     * @throws InvalidCborException (when consuming the stream) data is not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public <T> @NotNull Stream<T> stream(@NotNull CborDeserializer<T> item) {
+        return StreamSupport.stream(new ItemSpliterator<>(buffer.duplicate().order(buffer.order()), item), false);
+    }
+
+    private static final class ItemSpliterator<T> implements Spliterator<T> {
+        @NotNull private final ByteBuffer buffer;
+        @NotNull private final CborDecoder decoder;
+        @NotNull private final CborDeserializer<T> item;
+
+        ItemSpliterator(@NotNull ByteBuffer buffer, @NotNull CborDeserializer<T> item) {
+            this.buffer = buffer;
+            this.decoder = new CborDecoder(buffer);
+            this.item = item;
+        }
+
+        @Override
+        public boolean tryAdvance(@NotNull Consumer<? super T> action) {
+            if (!buffer.hasRemaining())
+                return false;
+            action.accept(item.next(decoder));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(@NotNull Consumer<? super T> action) {
+            while (buffer.hasRemaining())
+                action.accept(item.next(decoder));
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int start = buffer.position();
+            int mid = start + (buffer.limit() - start) / 2;
+            if (mid == start)
+                return null;
+            var scan = buffer.duplicate().order(buffer.order());
+            var scanner = new CborDecoder(scan);
+            do {
+                scanner.readAny();
+            } while (scan.position() < mid);
+            int boundary = scan.position();
+            if (boundary >= buffer.limit())
+                return null;
+
+            var prefix = buffer.duplicate().order(buffer.order());
+            prefix.limit(boundary);
+            buffer.position(boundary);
+            decoder.reset(buffer);
+            return new ItemSpliterator<>(prefix, item);
+        }
+
+        @Override
+        public long estimateSize() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | IMMUTABLE;
+        }
     }
 }
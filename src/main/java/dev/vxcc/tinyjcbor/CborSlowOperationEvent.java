@@ -0,0 +1,20 @@
+package dev.vxcc.tinyjcbor;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Recorded for decode and encode operations that take longer than the threshold, 20 ms unless configured otherwise:
+ * <pre><code>
+ *     java -XX:StartFlightRecording:dev.vxcc.tinyjcbor.SlowOperation#threshold=5ms ...
+ * </code></pre>
+ *
+ * @since 1.0.0-rc.4
+ */
+@Name("dev.vxcc.tinyjcbor.SlowOperation")
+@Label("Slow CBOR Operation")
+@Threshold("20 ms")
+public final class CborSlowOperationEvent extends CborOperationEvent {
+    CborSlowOperationEvent() {}
+}
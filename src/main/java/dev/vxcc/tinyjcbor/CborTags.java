@@ -12,5 +12,7 @@ public final class CborTags {
     public static final long BASE64_URL = 33;
     public static final long BASE64 = 34;
     public static final long MIME_MESSAGE = 36;
+    /** @since 1.0.0-rc.4 */
+    public static final long UUID = 37;
     public static final long SELF_DESCRIBED_CBOR = 55799;
 }
@@ -0,0 +1,53 @@
+package dev.vxcc.tinyjcbor;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Token kinds returned by {@link CborDecoder#next()}.
+ * <p>Each kind is the {@linkplain CborType#ordinal() ordinal} of the corresponding {@link CborType}.
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborToken {
+    private CborToken() {}
+
+    /** argument is the value, treated as unsigned integer */
+    public static final int UNSIGNED_INTEGER = 0;
+    /** argument is {@code -1 - value}, treated as unsigned integer */
+    public static final int NEGATIVE_INTEGER = 1;
+    /** argument is the length, followed by the contents or by chunks if indefinite */
+    public static final int BYTE_STRING = 2;
+    /** argument is the length in bytes, followed by the contents or by chunks if indefinite */
+    public static final int TEXT = 3;
+    /** argument is the number of items, unless indefinite */
+    public static final int ARRAY = 4;
+    /** argument is the number of pairs, unless indefinite */
+    public static final int MAP = 5;
+    /** argument is the tag number, followed by the tagged item */
+    public static final int TAG = 6;
+    public static final int FALSE = 7;
+    public static final int TRUE = 8;
+    public static final int NULL = 9;
+    public static final int UNDEFINED = 10;
+    /** argument is the simple value */
+    public static final int SIMPLE_VALUE = 11;
+    /** argument is the raw IEEE 754 half precision float */
+    public static final int FLOAT16 = 12;
+    /** argument is the raw IEEE 754 single precision float */
+    public static final int FLOAT32 = 13;
+    /** argument is the raw IEEE 754 double precision float */
+    public static final int FLOAT64 = 14;
+    /** end of indefinite length item */
+    public static final int BREAK = 15;
+
+    private static final CborType[] TYPES = CborType.values();
+
+    /**
+     * @return the type of the given token kind
+     * @throws ArrayIndexOutOfBoundsException not a token kind
+     * @since 1.0.0-rc.4
+     */
+    public static @NotNull CborType type(int kind) {
+        return TYPES[kind];
+    }
+}
@@ -0,0 +1,219 @@
+package dev.vxcc.tinyjcbor;
+
+import dev.vxcc.tinyjcbor.util.CborValue;
+import dev.vxcc.tinyjcbor.util.CborValueMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Produces the CBOR tokens of a {@link CborValue} tree, by walking it directly.
+ * <p>Used by {@link CborDecoder#CborDecoder(CborValue)}
+ */
+final class CborValueTokens {
+    private static final byte FRAME_LIST = 0;
+    private static final byte FRAME_ARRAY = 1;
+    private static final byte FRAME_SINGLE = 2;
+    private static final byte FRAME_VALUE_MAP = 3;
+
+    /* stack of containers that are currently being walked */
+    private Object @NotNull [] frameRef = new Object[8];
+    private byte @NotNull [] frameKind = new byte[8];
+    private int @NotNull [] frameIdx = new int[8];
+    private int @NotNull [] frameLen = new int[8];
+    private int depth;
+    /** number of tokens read so far */
+    private int index;
+
+    int major;
+    int additionalInfo;
+    long arg;
+    @Nullable private ByteBuffer bytes;
+
+    @Nullable private CborValue.Str lastStr;
+    private byte @Nullable [] lastStrUtf8;
+
+    CborValueTokens(@NotNull CborValue root) {
+        push(FRAME_SINGLE, root, 1);
+    }
+
+    private void push(byte kind, @NotNull Object ref, int len) {
+        if (depth == frameRef.length) {
+            int cap = depth << 1;
+            frameRef = Arrays.copyOf(frameRef, cap);
+            frameKind = Arrays.copyOf(frameKind, cap);
+            frameIdx = Arrays.copyOf(frameIdx, cap);
+            frameLen = Arrays.copyOf(frameLen, cap);
+        }
+        frameRef[depth] = ref;
+        frameKind[depth] = kind;
+        frameIdx[depth] = 0;
+        frameLen[depth] = len;
+        depth++;
+    }
+
+    /** Pop all completely walked containers */
+    private void popDone() {
+        while (depth > 0 && frameIdx[depth - 1] == frameLen[depth - 1])
+            frameRef[--depth] = null;
+    }
+
+    boolean hasNext() {
+        popDone();
+        return depth > 0;
+    }
+
+    int position() {
+        return index;
+    }
+
+    private @NotNull CborValue child(int frame, int i) {
+        var ref = frameRef[frame];
+        return switch (frameKind[frame]) {
+            case FRAME_LIST -> (CborValue) ((List<?>) ref).get(i);
+            case FRAME_ARRAY -> (CborValue) ((Object[]) ref)[i];
+            case FRAME_VALUE_MAP -> {
+                var map = (CborValueMap) ref;
+                yield (i & 1) == 0 ? map.keyAt(i >> 1) : map.valueAt(i >> 1);
+            }
+            default -> (CborValue) ref;
+        };
+    }
+
+    @Nullable CborType peekType() {
+        if (!hasNext())
+            return null;
+        return child(depth - 1, frameIdx[depth - 1]).type();
+    }
+
+    /**
+     * @return the payload of the current byte string or text token
+     */
+    @NotNull ByteBuffer bytes() {
+        if (bytes == null)
+            throw new IllegalStateException();
+        return bytes;
+    }
+
+    private byte @NotNull [] utf8(@NotNull CborValue.Str s) {
+        if (s != lastStr) {
+            lastStrUtf8 = s.value.getBytes(StandardCharsets.UTF_8);
+            lastStr = s;
+        }
+        return lastStrUtf8;
+    }
+
+    private void token(int major, int additionalInfo, long arg) {
+        this.major = major;
+        this.additionalInfo = additionalInfo;
+        this.arg = arg;
+    }
+
+    private void simple(int value) {
+        token(7, value < 24 ? value : 24, value & 0xFF);
+    }
+
+    void next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        int top = depth - 1;
+        var value = child(top, frameIdx[top]++);
+        index++;
+        bytes = null;
+        switch (value) {
+            case CborValue.Unsigned v -> token(0, 0, v.value);
+            case CborValue.Signed v -> {
+                if (v.value >= 0)
+                    token(0, 0, v.value);
+                else
+                    token(1, 0, -1 - v.value);
+            }
+            case CborValue.Float16 v -> token(7, 25, v.value & 0xFFFFL);
+            case CborValue.Float32 v -> token(7, 26, Float.floatToRawIntBits(v.value) & 0xFFFFFFFFL);
+            case CborValue.Float64 v -> token(7, 27, Double.doubleToRawLongBits(v.value));
+            case CborValue.Str v -> {
+                var utf8 = utf8(v);
+                token(3, 0, utf8.length);
+                bytes = ByteBuffer.wrap(utf8);
+            }
+            case CborValue.Bytes v -> {
+                token(2, 0, v.value.length);
+                bytes = ByteBuffer.wrap(v.value);
+            }
+            case CborValue.Arr v -> {
+                token(4, 0, v.value.size());
+                if (!v.value.isEmpty())
+                    push(FRAME_LIST, v.value, v.value.size());
+            }
+            case CborValue.Dict v -> {
+                token(5, 0, v.value.size());
+                if (v.value instanceof CborValueMap map) {
+                    if (!map.isEmpty())
+                        push(FRAME_VALUE_MAP, map, map.size() << 1);
+                } else if (!v.value.isEmpty()) {
+                    var flat = new Object[v.value.size() << 1];
+                    int i = 0;
+                    for (var e : v.value.entrySet()) {
+                        flat[i++] = e.getKey();
+                        flat[i++] = e.getValue();
+                    }
+                    push(FRAME_ARRAY, flat, flat.length);
+                }
+            }
+            case CborValue.Tag v -> {
+                token(6, 0, v.tag);
+                push(FRAME_SINGLE, v.value, 1);
+            }
+            case CborValue.Bool v -> simple(v.value ? 21 : 20);
+            case CborValue.Null ignored -> simple(22);
+            case CborValue.Undefined ignored -> simple(23);
+            case CborValue.Simple v -> simple(v.value & 0xFF);
+        }
+    }
+
+    void save(@NotNull CborDecoder.Snapshot snap) {
+        if (snap.frameRef == null || snap.frameRef.length < depth) {
+            int cap = Math.max(depth, 8);
+            snap.frameRef = new Object[cap];
+            snap.frameKind = new byte[cap];
+            snap.frameIdx = new int[cap];
+            snap.frameLen = new int[cap];
+        }
+        System.arraycopy(frameRef, 0, snap.frameRef, 0, depth);
+        System.arraycopy(frameKind, 0, snap.frameKind, 0, depth);
+        System.arraycopy(frameIdx, 0, snap.frameIdx, 0, depth);
+        System.arraycopy(frameLen, 0, snap.frameLen, 0, depth);
+        snap.depth = depth;
+        snap.position = index;
+        snap.bytes = bytes;
+        snap.bytesPosition = bytes == null ? 0 : bytes.position();
+    }
+
+    void restore(@NotNull CborDecoder.Snapshot snap) {
+        if (snap.frameRef == null)
+            throw new IllegalArgumentException("Snapshot was not taken from a decoder reading a CborValue");
+        int d = snap.depth;
+        if (frameRef.length < d) {
+            frameRef = Arrays.copyOf(frameRef, d);
+            frameKind = Arrays.copyOf(frameKind, d);
+            frameIdx = Arrays.copyOf(frameIdx, d);
+            frameLen = Arrays.copyOf(frameLen, d);
+        }
+        for (int i = d; i < depth; i++)
+            frameRef[i] = null;
+        System.arraycopy(snap.frameRef, 0, frameRef, 0, d);
+        System.arraycopy(snap.frameKind, 0, frameKind, 0, d);
+        System.arraycopy(snap.frameIdx, 0, frameIdx, 0, d);
+        System.arraycopy(snap.frameLen, 0, frameLen, 0, d);
+        depth = d;
+        index = snap.position;
+        bytes = snap.bytes;
+        if (bytes != null)
+            bytes.position(snap.bytesPosition);
+    }
+}
@@ -0,0 +1,146 @@
+package dev.vxcc.tinyjcbor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the events of one CBOR item, see {@link CborDecoder#accept(CborVisitor)}.
+ * <p>All methods do nothing by default, so only the relevant events have to be implemented.
+ * <p>Byte string and text contents are passed as buffer, that is a view of the decoded data.
+ * It is only valid until the method returns, because the decoder reuses it.
+ * <br><br>
+ *
+ * Example, counting the numbers in a document:
+ * <pre><code>
+ *     class Counter implements CborVisitor {
+ *         long count;
+ *
+ *         public void visitUnsigned(long value) { count++; }
+ *         public void visitNegative(long arg) { count++; }
+ *     }
+ *
+ *     var counter = new Counter();
+ *     decoder.accept(counter);
+ * </code></pre>
+ *
+ * @since 1.0.0-rc.4
+ */
+public interface CborVisitor {
+    /**
+     * @param value treated as unsigned integer
+     * @since 1.0.0-rc.4
+     */
+    default void visitUnsigned(long value) {}
+
+    /**
+     * @param arg treated as unsigned integer. The value is {@code -1 - arg}, which only fits into a long if {@code arg >= 0}
+     * @since 1.0.0-rc.4
+     */
+    default void visitNegative(long arg) {}
+
+    /**
+     * A definite length byte string, or one chunk of a chunked byte string
+     * @param bytes the contents, only valid until this method returns
+     * @since 1.0.0-rc.4
+     */
+    default void visitBytes(@NotNull ByteBuffer bytes) {}
+
+    /**
+     * Begin of a chunked byte string. The chunks are passed to {@link #visitBytes(ByteBuffer)}
+     * @since 1.0.0-rc.4
+     */
+    default void beginChunkedBytes() {}
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    default void endChunkedBytes() {}
+
+    /**
+     * A definite length text, or one chunk of a chunked text
+     * @param utf8 the UTF-8 encoded contents, only valid until this method returns
+     * @since 1.0.0-rc.4
+     */
+    default void visitText(@NotNull ByteBuffer utf8) {}
+
+    /**
+     * Begin of a chunked text. The chunks are passed to {@link #visitText(ByteBuffer)}
+     * @since 1.0.0-rc.4
+     */
+    default void beginChunkedText() {}
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    default void endChunkedText() {}
+
+    /**
+     * Followed by the items, and then {@link #endArray()}
+     * @param length number of items, or {@code -1} for indefinite length arrays
+     * @since 1.0.0-rc.4
+     */
+    default void beginArray(long length) {}
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    default void endArray() {}
+
+    /**
+     * Followed by the alternating keys and values, and then {@link #endMap()}
+     * @param pairs number of pairs, or {@code -1} for indefinite length maps
+     * @since 1.0.0-rc.4
+     */
+    default void beginMap(long pairs) {}
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    default void endMap() {}
+
+    /**
+     * Followed by the tagged item
+     * @param tag treated as unsigned integer
+     * @since 1.0.0-rc.4
+     */
+    default void visitTag(long tag) {}
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    default void visitBool(boolean value) {}
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    default void visitNull() {}
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    default void visitUndefined() {}
+
+    /**
+     * Simple values other than booleans, null and undefined
+     * @param value between 0 and 255
+     * @since 1.0.0-rc.4
+     */
+    default void visitSimple(int value) {}
+
+    /**
+     * @param bits the raw IEEE 754 half precision float
+     * @since 1.0.0-rc.4
+     */
+    default void visitFloat16(short bits) {}
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    default void visitFloat32(float value) {}
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    default void visitFloat64(double value) {}
+}
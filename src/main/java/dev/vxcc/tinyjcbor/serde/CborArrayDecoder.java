@@ -4,6 +4,7 @@ import dev.vxcc.tinyjcbor.CborDecoder;
 import dev.vxcc.tinyjcbor.CborType;
 import dev.vxcc.tinyjcbor.UnexpectedCborException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.stream.Collector;
 
@@ -26,11 +27,34 @@ public final class CborArrayDecoder<T, R> extends CborPrim.PrimitiveDecoder<R> {
 
     private static <T, A, R> R next(@NotNull Collector<T, A, R> collector, @NotNull CborDeserializer<T> item, @NotNull CborDecoder decoder) {
         var out = collector.supplier().get();
-        var iter = decoder.readArray(item);
-        while (iter.hasNext()) {
-            var v = iter.next();
-            collector.accumulator().accept(out, v);
-        }
+        var accumulator = collector.accumulator();
+        int arr = decoder.enterArray();
+        while (decoder.nextItem(arr))
+            accumulator.accept(out, item.next(decoder));
         return collector.finisher().apply(out);
     }
+
+    @Override
+    protected @Nullable Object tryNextAccepted(@NotNull CborDecoder decoder) {
+        return tryNext(collector, item, decoder);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, A, R> @Nullable Object tryNext(@NotNull Collector<T, A, R> collector, @NotNull CborDeserializer<T> item, @NotNull CborDecoder decoder) {
+        var out = collector.supplier().get();
+        var accumulator = collector.accumulator();
+        int arr = decoder.enterArray();
+        try {
+            while (decoder.nextItem(arr)) {
+                var x = item.tryNext(decoder);
+                if (x == NO_MATCH)
+                    return NO_MATCH;
+                accumulator.accept(out, (T) x);
+            }
+            return collector.finisher().apply(out);
+        } catch (UnexpectedCborException ignored) {
+            /* thrown by the collector */
+            return NO_MATCH;
+        }
+    }
 }
@@ -4,6 +4,7 @@ import dev.vxcc.tinyjcbor.CborDecoder;
 import dev.vxcc.tinyjcbor.CborType;
 import dev.vxcc.tinyjcbor.UnexpectedCborException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -17,6 +18,18 @@ import java.util.function.Function;
  */
 @FunctionalInterface
 public interface CborDeserializer<T> {
+    /**
+     * Returned by {@link #tryNext(CborDecoder)} when the item does not match. Compare by identity.
+     *
+     * @since 1.0.0-rc.4
+     */
+    @NotNull Object NO_MATCH = new Object() {
+        @Override
+        public String toString() {
+            return "NO_MATCH";
+        }
+    };
+
     /**
      * Try to deserialize a {@code T} from a CBOR buffer
      *
@@ -28,6 +41,25 @@ public interface CborDeserializer<T> {
      */
     T next(@NotNull CborDecoder decoder) throws UnexpectedCborException;
 
+    /**
+     * Like {@link #next(CborDecoder)}, but returns {@link #NO_MATCH} instead of throwing {@link UnexpectedCborException}
+     * if the data does not match the expected schema.
+     * <p>After a mismatch, the position of the decoder is unspecified. Callers that want to try something else have to reset it to a snapshot.
+     * <p>The default implementation catches the exception thrown by {@code next}.
+     * Deserializers that are used in variants should override it, to not construct an exception per mismatch.
+     *
+     * @return the deserialized {@code T}, or {@link #NO_MATCH}
+     *
+     * @since 1.0.0-rc.4
+     */
+    default @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+        try {
+            return next(decoder);
+        } catch (UnexpectedCborException ignored) {
+            return NO_MATCH;
+        }
+    }
+
     /**
      * @return true, if there is a possibility for the deserializer accepting an item with the given type
      *
@@ -58,6 +90,19 @@ public interface CborDeserializer<T> {
                 return fn.apply(parent.next(decoder));
             }
 
+            @Override
+            @SuppressWarnings("unchecked")
+            public @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+                var x = parent.tryNext(decoder);
+                if (x == NO_MATCH)
+                    return NO_MATCH;
+                try {
+                    return fn.apply((T) x);
+                } catch (UnexpectedCborException ignored) {
+                    return NO_MATCH;
+                }
+            }
+
             @Override
             public boolean mightAccept(@NotNull CborType type) {
                 return parent.mightAccept(type);
@@ -84,6 +129,22 @@ public interface CborDeserializer<T> {
                 return then.apply(a, b);
             }
 
+            @Override
+            @SuppressWarnings("unchecked")
+            public @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+                var a = parent.tryNext(decoder);
+                if (a == NO_MATCH)
+                    return NO_MATCH;
+                var b = other.tryNext(decoder);
+                if (b == NO_MATCH)
+                    return NO_MATCH;
+                try {
+                    return then.apply((T) a, (B) b);
+                } catch (UnexpectedCborException ignored) {
+                    return NO_MATCH;
+                }
+            }
+
             @Override
             public boolean mightAccept(@NotNull CborType type) {
                 return parent.mightAccept(type);
@@ -4,6 +4,7 @@ import dev.vxcc.tinyjcbor.CborDecoder;
 import dev.vxcc.tinyjcbor.CborType;
 import dev.vxcc.tinyjcbor.UnexpectedCborException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public final class CborFixedTagDecoder<T> extends CborPrim.PrimitiveDecoder<T> {
     @NotNull private final CborDeserializer<T> item;
@@ -24,4 +25,11 @@ public final class CborFixedTagDecoder<T> extends CborPrim.PrimitiveDecoder<T> {
             throw new UnexpectedCborException.WrongTag(tag, x);
         return item.next(decoder);
     }
+
+    @Override
+    protected @Nullable Object tryNextAccepted(@NotNull CborDecoder decoder) {
+        if (decoder.readTag() != tag)
+            return NO_MATCH;
+        return item.tryNext(decoder);
+    }
 }
@@ -0,0 +1,70 @@
+package dev.vxcc.tinyjcbor.serde;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Immutable lookup table from unsigned long keys (tag numbers, discriminators) to values.
+ * <p>Keys below {@code denseLimit} index a flat array, larger keys are stored with open addressing in primitive arrays.
+ */
+final class CborLongTable<V> {
+    private final int denseLimit;
+    @Nullable private final Object @NotNull [] dense;
+    private final long @NotNull [] sparseKeys;
+    @Nullable private final Object @NotNull [] sparseVals;
+
+    /**
+     * @param keys must not contain duplicates
+     */
+    CborLongTable(int denseLimit, long @NotNull [] keys, @NotNull List<? extends V> values) {
+        this.denseLimit = denseLimit;
+        int denseLen = 0;
+        int sparseCount = 0;
+        for (long key : keys) {
+            if (isDense(key))
+                denseLen = Math.max(denseLen, (int) key + 1);
+            else
+                sparseCount++;
+        }
+
+        dense = new Object[denseLen];
+        int cap = sparseCount == 0 ? 1 : Integer.highestOneBit(sparseCount * 2 - 1) << 1;
+        sparseKeys = new long[cap];
+        sparseVals = new Object[cap];
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            if (isDense(key)) {
+                dense[(int) key] = values.get(i);
+            } else {
+                int slot = slot(key, cap - 1);
+                while (sparseVals[slot] != null)
+                    slot = (slot + 1) & (cap - 1);
+                sparseKeys[slot] = key;
+                sparseVals[slot] = values.get(i);
+            }
+        }
+    }
+
+    private boolean isDense(long key) {
+        return key >= 0 && key < denseLimit;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable V get(long key) {
+        if (isDense(key))
+            return key < dense.length ? (V) dense[(int) key] : null;
+        int mask = sparseKeys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            var v = sparseVals[slot];
+            if (v == null || sparseKeys[slot] == key)
+                return (V) v;
+        }
+    }
+}
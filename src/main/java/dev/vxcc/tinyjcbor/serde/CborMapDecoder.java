@@ -5,6 +5,7 @@ import dev.vxcc.tinyjcbor.CborType;
 import dev.vxcc.tinyjcbor.UnexpectedCborException;
 import dev.vxcc.tinyjcbor.util.MapConstructor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class CborMapDecoder<K, V, O> implements CborDeserializer<O> {
     @NotNull private final Impl<K, V, ?, O> impl;
@@ -18,6 +19,11 @@ public class CborMapDecoder<K, V, O> implements CborDeserializer<O> {
         return impl.next(decoder);
     }
 
+    @Override
+    public @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+        return impl.tryNext(decoder);
+    }
+
     @Override
     public boolean mightAccept(@NotNull CborType type) {
         return impl.mightAccept(type);
@@ -46,11 +52,35 @@ public class CborMapDecoder<K, V, O> implements CborDeserializer<O> {
         @Override
         public final @NotNull O next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
             var map = constructor.begin();
-            decoder.readMap(key, val, (k, v) -> {
-                constructor.put(map, k, v);
-            });
+            int container = decoder.enterMap();
+            while (decoder.nextItem(container)) {
+                var k = key.next(decoder);
+                constructor.put(map, k, val.next(decoder));
+            }
             return constructor.done(map);
         }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected @Nullable Object tryNextAccepted(@NotNull CborDecoder decoder) {
+            var map = constructor.begin();
+            int container = decoder.enterMap();
+            try {
+                while (decoder.nextItem(container)) {
+                    var k = key.tryNext(decoder);
+                    if (k == NO_MATCH)
+                        return NO_MATCH;
+                    var v = val.tryNext(decoder);
+                    if (v == NO_MATCH)
+                        return NO_MATCH;
+                    constructor.put(map, (K) k, (V) v);
+                }
+                return constructor.done(map);
+            } catch (UnexpectedCborException ignored) {
+                /* thrown by the constructor */
+                return NO_MATCH;
+            }
+        }
     }
 }
 
@@ -0,0 +1,167 @@
+package dev.vxcc.tinyjcbor.serde;
+
+import dev.vxcc.tinyjcbor.CborDecoder;
+import dev.vxcc.tinyjcbor.CborType;
+import dev.vxcc.tinyjcbor.UnexpectedCborException;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collector;
+
+/**
+ * Decodes large arrays on multiple threads.
+ * <p>First scans the array, skipping over the items without decoding them, and remembers where every chunk of items begins.
+ * The chunks are then decoded by {@link ForkJoinPool} tasks, each with its own {@code CborDecoder} over the same buffer,
+ * and the results are combined in order with the {@linkplain Collector#combiner() combiner} of the collector.
+ * <p>The item deserializer has to be thread safe.
+ * Decoders that read a {@link dev.vxcc.tinyjcbor.util.CborValue} instead of a buffer decode the array sequentially.
+ *
+ * <pre><code>
+ *     var records = Cbor.decode(buffer, new CborParallelArrayDecoder&lt;&gt;(Collectors.toList(), RECORD));
+ * </code></pre>
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborParallelArrayDecoder<T, R> extends CborPrim.PrimitiveDecoder<R> {
+    private static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    @NotNull private final Collector<T, ?, R> collector;
+    @NotNull private final CborDeserializer<T> item;
+    @NotNull private final ForkJoinPool pool;
+    private final int chunkSize;
+    /** for decoders of a {@code CborValue}, and to report mismatching types */
+    @NotNull private final CborArrayDecoder<T, R> sequential;
+
+    private static final CborType @NotNull [] ACCEPTS = { CborType.Array };
+
+    /**
+     * Decodes on the common pool, in chunks of 4096 items
+     * @since 1.0.0-rc.4
+     */
+    public CborParallelArrayDecoder(@NotNull Collector<T, ?, R> collector, @NotNull CborDeserializer<T> item) {
+        this(collector, item, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize number of items decoded by one task
+     * @since 1.0.0-rc.4
+     */
+    public CborParallelArrayDecoder(@NotNull Collector<T, ?, R> collector, @NotNull CborDeserializer<T> item,
+                                    @NotNull ForkJoinPool pool, int chunkSize) {
+        super(ACCEPTS);
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize has to be positive");
+        this.collector = collector;
+        this.item = item;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.sequential = new CborArrayDecoder<>(collector, item);
+    }
+
+    @Override
+    public R next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+        var raw = decoder.buffer();
+        if (raw == null || decoder.peekTokenType() != CborType.Array)
+            return sequential.next(decoder);
+        return next(collector, raw, scan(decoder));
+    }
+
+    private <A> R next(@NotNull Collector<T, A, R> collector, @NotNull ByteBuffer raw, @NotNull Chunks chunks) {
+        A out;
+        if (chunks.count <= 1)
+            out = new Chunk<>(collector, item, raw, chunks, 0, chunks.count).compute();
+        else
+            out = pool.invoke(new Chunk<>(collector, item, raw, chunks, 0, chunks.count));
+        return collector.finisher().apply(out);
+    }
+
+    /** positions of the items at the begin of each chunk, and the end of the last item */
+    private static final class Chunks {
+        int @NotNull [] starts = new int[16];
+        int @NotNull [] items = new int[16];
+        int count;
+        int end;
+
+        void add(int start, int numItems) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count << 1);
+                items = Arrays.copyOf(items, count << 1);
+            }
+            starts[count] = start;
+            items[count] = numItems;
+            count++;
+        }
+    }
+
+    /** skips over the items, remembering the chunk boundaries on the way */
+    private @NotNull Chunks scan(@NotNull CborDecoder decoder) {
+        var chunks = new Chunks();
+        int arr = decoder.enterArray();
+        int inChunk = 0;
+        int start = decoder.position();
+        int end = start;
+        while (decoder.nextItem(arr)) {
+            if (inChunk == chunkSize) {
+                chunks.add(start, inChunk);
+                inChunk = 0;
+                start = decoder.position();
+            }
+            decoder.readAny();
+            end = decoder.position();
+            inChunk++;
+        }
+        if (inChunk > 0)
+            chunks.add(start, inChunk);
+        chunks.end = end;
+        return chunks;
+    }
+
+    /* tasks are never serialized */
+    @SuppressWarnings("serial")
+    private static final class Chunk<T, A, R> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        @NotNull private final Collector<T, A, R> collector;
+        @NotNull private final CborDeserializer<T> item;
+        @NotNull private final ByteBuffer raw;
+        @NotNull private final Chunks chunks;
+        private final int lo;
+        private final int hi;
+
+        Chunk(@NotNull Collector<T, A, R> collector, @NotNull CborDeserializer<T> item,
+              @NotNull ByteBuffer raw, @NotNull Chunks chunks, int lo, int hi) {
+            this.collector = collector;
+            this.item = item;
+            this.raw = raw;
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected A compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                var left = new Chunk<>(collector, item, raw, chunks, lo, mid);
+                left.fork();
+                var right = new Chunk<>(collector, item, raw, chunks, mid, hi).compute();
+                return collector.combiner().apply(left.join(), right);
+            }
+
+            var out = collector.supplier().get();
+            if (lo == hi)
+                return out;
+            int end = lo + 1 < chunks.count ? chunks.starts[lo + 1] : chunks.end;
+            var buf = raw.duplicate().order(raw.order());
+            buf.limit(end).position(chunks.starts[lo]);
+            var decoder = new CborDecoder(buf);
+            var accumulator = collector.accumulator();
+            for (int i = chunks.items[lo]; i > 0; i--)
+                accumulator.accept(out, item.next(decoder));
+            return out;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package dev.vxcc.tinyjcbor.serde;
+
+import dev.vxcc.tinyjcbor.CborEncoder;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Like {@link CborCollectionArrayEncoder}, but encodes the items of large collections on multiple threads.
+ * <p>The items are split into chunks, that are encoded by {@link ForkJoinPool} tasks into pooled buffers,
+ * and then written in order. The output is identical to {@link CborCollectionArrayEncoder}, if the item serializer is deterministic.
+ * If the encoder writes into a {@link dev.vxcc.tinyjcbor.CborSegmentedOutput}, large chunks are referenced instead of copied.
+ * <p>The item serializer has to be thread safe.
+ *
+ * @since 1.0.0-rc.4
+ */
+public class CborParallelArrayEncoder<T, C extends Collection<T>> implements CborSerializer<C> {
+    private static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    @NotNull private final CborParallelEncoding parallel;
+    @NotNull private final CborParallelEncoding.ItemWriter writer;
+
+    /**
+     * Encodes on the common pool, in chunks of 4096 items
+     * @since 1.0.0-rc.4
+     */
+    public CborParallelArrayEncoder(@NotNull CborSerializer<T> item) {
+        this(item, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize number of items encoded by one task. Smaller collections are encoded on the calling thread.
+     * @since 1.0.0-rc.4
+     */
+    @SuppressWarnings("unchecked")
+    public CborParallelArrayEncoder(@NotNull CborSerializer<T> item, @NotNull ForkJoinPool pool, int chunkSize) {
+        this.parallel = new CborParallelEncoding(pool, chunkSize);
+        this.writer = (encoder, x) -> item.encode(encoder, (T) x);
+    }
+
+    @Override
+    public void encode(@NotNull CborEncoder encoder, @NotNull C value) throws IOException {
+        parallel.encode(encoder, 4, value.toArray(), writer);
+    }
+}
@@ -0,0 +1,159 @@
+package dev.vxcc.tinyjcbor.serde;
+
+import dev.vxcc.tinyjcbor.CborEncoder;
+import dev.vxcc.tinyjcbor.CborOutputBuffer;
+import dev.vxcc.tinyjcbor.CborRawEncoder;
+import dev.vxcc.tinyjcbor.CborSegmentedOutput;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Encodes the items of an array or map in chunks on a fork/join pool, and concatenates the chunks in order */
+final class CborParallelEncoding {
+    private static final int MAX_POOLED = 64;
+
+    interface ItemWriter {
+        void write(@NotNull CborEncoder encoder, Object item) throws IOException;
+    }
+
+    /** output of one chunk, pooled with its encoder */
+    private static final class Segment {
+        @NotNull final ByteOrder order;
+        @NotNull final CborOutputBuffer out = new CborOutputBuffer(4096);
+        @NotNull final CborEncoder encoder;
+
+        Segment(@NotNull ByteOrder order) {
+            this.order = order;
+            this.encoder = new CborEncoder(order, out);
+        }
+    }
+
+    @NotNull private final ForkJoinPool pool;
+    private final int chunkSize;
+    @NotNull private final ConcurrentLinkedQueue<Segment> segments = new ConcurrentLinkedQueue<>();
+    @NotNull private final AtomicInteger pooled = new AtomicInteger();
+
+    CborParallelEncoding(@NotNull ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize has to be positive");
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    private @NotNull Segment acquire(@NotNull ByteOrder order) {
+        Segment seg;
+        while ((seg = segments.poll()) != null) {
+            pooled.decrementAndGet();
+            if (seg.order == order) {
+                seg.out.reset();
+                seg.encoder.reset(seg.out);
+                return seg;
+            }
+        }
+        return new Segment(order);
+    }
+
+    private void release(@NotNull Segment seg) {
+        if (pooled.incrementAndGet() <= MAX_POOLED)
+            segments.offer(seg);
+        else
+            pooled.decrementAndGet();
+    }
+
+    /**
+     * @param major 4 for arrays, 5 for maps
+     * @param items array items, or map entries
+     */
+    void encode(@NotNull CborEncoder encoder, int major, Object @NotNull [] items, @NotNull ItemWriter writer) throws IOException {
+        int n = items.length;
+        if (n <= chunkSize) {
+            if (major == 4)
+                encoder.writeArray(n);
+            else
+                encoder.writeMap(n);
+            for (var x : items)
+                writer.write(encoder, x);
+            return;
+        }
+
+        var order = encoder.unsafe.byteOrder();
+        var chunks = new Segment[(n - 1) / chunkSize + 1];
+        try {
+            try {
+                pool.invoke(new Task(order, items, writer, chunks, 0, chunks.length));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            /* the whole container is written as one pre-encoded item: the head and all chunks but the last raw, the last one as item */
+            encoder.unsafe.writeRaw(CborRawEncoder.encodeHead(order, major, n));
+            var out = encoder.unsafe.out();
+            for (int i = 0; i < chunks.length; i++) {
+                var seg = chunks[i];
+                if (out instanceof CborSegmentedOutput s && seg.out.size() >= s.referenceThreshold())
+                    chunks[i] = null; /* referenced by the output now */
+                if (i == chunks.length - 1)
+                    encoder.writeEncoded(seg.out.asByteBuffer());
+                else
+                    writeRaw(out, seg);
+            }
+        } finally {
+            for (var seg : chunks)
+                if (seg != null)
+                    release(seg);
+        }
+    }
+
+    private static void writeRaw(@NotNull OutputStream out, @NotNull Segment seg) throws IOException {
+        if (out instanceof CborSegmentedOutput s && seg.out.size() >= s.referenceThreshold())
+            s.writeReference(seg.out.asByteBuffer());
+        else
+            seg.out.writeTo(out);
+    }
+
+    /* tasks are never serialized */
+    @SuppressWarnings("serial")
+    private final class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        @NotNull private final ByteOrder order;
+        private final Object @NotNull [] items;
+        @NotNull private final ItemWriter writer;
+        private final Segment @NotNull [] chunks;
+        private final int lo;
+        private final int hi;
+
+        Task(@NotNull ByteOrder order, Object @NotNull [] items, @NotNull ItemWriter writer, Segment @NotNull [] chunks, int lo, int hi) {
+            this.order = order;
+            this.items = items;
+            this.writer = writer;
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Task(order, items, writer, chunks, lo, mid), new Task(order, items, writer, chunks, mid, hi));
+                return;
+            }
+            var seg = acquire(order);
+            chunks[lo] = seg;
+            int end = (int) Math.min((long) (lo + 1) * chunkSize, items.length);
+            try {
+                for (int i = lo * chunkSize; i < end; i++)
+                    writer.write(seg.encoder, items[i]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package dev.vxcc.tinyjcbor.serde;
+
+import dev.vxcc.tinyjcbor.CborEncoder;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Like {@link CborMapEncoder}, but encodes the pairs of large maps on multiple threads.
+ * <p>The pairs are split into chunks, that are encoded by {@link ForkJoinPool} tasks into pooled buffers,
+ * and then written in iteration order. The output is identical to {@link CborMapEncoder}, if the serializers are deterministic.
+ * <p>The key and value serializers have to be thread safe.
+ *
+ * @since 1.0.0-rc.4
+ */
+public class CborParallelMapEncoder<K, V, M extends Map<K, V>> implements CborSerializer<M> {
+    private static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    @NotNull private final CborParallelEncoding parallel;
+    @NotNull private final CborParallelEncoding.ItemWriter writer;
+
+    /**
+     * Encodes on the common pool, in chunks of 4096 pairs
+     * @since 1.0.0-rc.4
+     */
+    public CborParallelMapEncoder(@NotNull CborSerializer<K> key, @NotNull CborSerializer<V> val) {
+        this(key, val, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize number of pairs encoded by one task. Smaller maps are encoded on the calling thread.
+     * @since 1.0.0-rc.4
+     */
+    @SuppressWarnings("unchecked")
+    public CborParallelMapEncoder(@NotNull CborSerializer<K> key, @NotNull CborSerializer<V> val,
+                                  @NotNull ForkJoinPool pool, int chunkSize) {
+        this.parallel = new CborParallelEncoding(pool, chunkSize);
+        this.writer = (encoder, x) -> {
+            var entry = (Map.Entry<K, V>) x;
+            key.encode(encoder, entry.getKey());
+            val.encode(encoder, entry.getValue());
+        };
+    }
+
+    @Override
+    public void encode(@NotNull CborEncoder encoder, @NotNull M value) throws IOException {
+        parallel.encode(encoder, 5, value.entrySet().toArray(), writer);
+    }
+}
@@ -37,6 +37,31 @@ public final class CborPrim {
             return !mightAccept(type);
         }
 
+        /**
+         * Checks the type of the next token, and only then calls {@link #tryNextAccepted(CborDecoder)}
+         * @since 1.0.0-rc.4
+         */
+        @Override
+        public final @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+            var type = decoder.peekTokenType();
+            if (type == null || !mightAccept(type))
+                return NO_MATCH;
+            return tryNextAccepted(decoder);
+        }
+
+        /**
+         * Called by {@link #tryNext(CborDecoder)} after checking that the next token is of one of the accepted types.
+         * <p>Defaults to {@link #next(CborDecoder)}, catching {@link UnexpectedCborException}.
+         * Decoders that can mismatch for other reasons than the type of the first token should override this.
+         *
+         * @return the deserialized {@code T}, or {@link CborDeserializer#NO_MATCH}
+         *
+         * @since 1.0.0-rc.4
+         */
+        protected @Nullable Object tryNextAccepted(@NotNull CborDecoder decoder) {
+            return CborDeserializer.super.tryNext(decoder);
+        }
+
         /**
          * @return Array of types this deserializer accepts
          */
@@ -154,7 +179,7 @@ public final class CborPrim {
 
     public static final CborSerDe<@NotNull Double> MOST_DOUBLE =
         new CborSerDe<>(
-            new PrimitiveDecoder<@NotNull Double>(new CborType[]{ CborType.Float16, CborType.Float32, CborType.Float32 })
+            new PrimitiveDecoder<@NotNull Double>(new CborType[]{ CborType.Float16, CborType.Float32, CborType.Float64 })
     {
         @Override
         public Double next(@NotNull CborDecoder decoder) throws UnexpectedCborException, dev.vxcc.tinyjcbor.InvalidCborException {
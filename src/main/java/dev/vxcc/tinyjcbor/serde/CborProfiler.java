@@ -0,0 +1,309 @@
+package dev.vxcc.tinyjcbor.serde;
+
+import dev.vxcc.tinyjcbor.CborDecoder;
+import dev.vxcc.tinyjcbor.CborEncoder;
+import dev.vxcc.tinyjcbor.CborMetrics;
+import dev.vxcc.tinyjcbor.CborType;
+import dev.vxcc.tinyjcbor.UnexpectedCborException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Attributes time and bytes to the nodes of composed deserializers and serializers.
+ * <p>Wrap the nodes of interest with {@link #profile(String, CborDeserializer)} or {@link #profile(String, CborSerializer)}
+ * while composing the schema. Calls are aggregated by call path, so the same profiled node used in two places appears twice in the tree.
+ * <pre><code>
+ *     var profiler = new CborProfiler();
+ *     var users = profiler.profile("users", new CborArrayDecoder&lt;&gt;(Collectors.toList(), profiler.profile("user", USER)));
+ *     for (var buffer : corpus)
+ *         Cbor.decode(buffer, users);
+ *     System.out.print(profiler.report());
+ * </code></pre>
+ * <p>Bytes of deserializers are the advance of {@link CborDecoder#position()}, which counts tokens for decoders of a {@code CborValue}.
+ * Bytes of serializers are counted with {@link CborMetrics}: with the metrics of the encoder if it has some, otherwise with metrics
+ * the profiler sets for the duration of the outermost profiled call.
+ * Metrics shared by encoders of several threads make the byte counts inaccurate.
+ * <p>Profiled nodes can be called from multiple threads, but measuring costs a few nanoseconds per call, so don't profile in production.
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborProfiler {
+    @NotNull private final Node root = new Node("");
+    @NotNull private final ThreadLocal<Stack> stacks = ThreadLocal.withInitial(Stack::new);
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public CborProfiler() {}
+
+    /**
+     * Costs of one node in one call path
+     *
+     * @since 1.0.0-rc.4
+     */
+    public static final class Node {
+        @NotNull private final String name;
+        @NotNull private final Map<Object, Node> children = new ConcurrentHashMap<>();
+        @NotNull private final LongAdder calls = new LongAdder();
+        @NotNull private final LongAdder misses = new LongAdder();
+        @NotNull private final LongAdder totalNanos = new LongAdder();
+        @NotNull private final LongAdder selfNanos = new LongAdder();
+        @NotNull private final LongAdder bytes = new LongAdder();
+        @NotNull private final LongAdder selfBytes = new LongAdder();
+
+        private Node(@NotNull String name) {
+            this.name = name;
+        }
+
+        private @NotNull Node child(@NotNull Object site, @NotNull String name) {
+            var node = children.get(site);
+            if (node == null)
+                node = children.computeIfAbsent(site, k -> new Node(name));
+            return node;
+        }
+
+        /** @since 1.0.0-rc.4 */
+        public @NotNull String name() {
+            return name;
+        }
+
+        /** @since 1.0.0-rc.4 */
+        public long calls() {
+            return calls.sum();
+        }
+
+        /**
+         * Calls that did not match the schema: {@link CborDeserializer#NO_MATCH} results and {@link UnexpectedCborException}s
+         * @since 1.0.0-rc.4
+         */
+        public long misses() {
+            return misses.sum();
+        }
+
+        /**
+         * Time spent in the node, including profiled children
+         * @since 1.0.0-rc.4
+         */
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * Time spent in the node, excluding profiled children
+         * @since 1.0.0-rc.4
+         */
+        public long selfNanos() {
+            return selfNanos.sum();
+        }
+
+        /**
+         * Bytes read or written by the node, including profiled children
+         * @since 1.0.0-rc.4
+         */
+        public long bytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * Bytes read or written by the node, excluding profiled children
+         * @since 1.0.0-rc.4
+         */
+        public long selfBytes() {
+            return selfBytes.sum();
+        }
+
+        /**
+         * @return the profiled nodes called by this node, most expensive first
+         * @since 1.0.0-rc.4
+         */
+        public @NotNull List<Node> children() {
+            var list = new ArrayList<>(children.values());
+            list.sort(Comparator.comparingLong(Node::totalNanos).reversed());
+            return list;
+        }
+
+        private void reset() {
+            children.clear();
+            calls.reset();
+            misses.reset();
+            totalNanos.reset();
+            selfNanos.reset();
+            bytes.reset();
+            selfBytes.reset();
+        }
+    }
+
+    /** the profiled calls running on one thread */
+    private static final class Stack {
+        @NotNull Node[] nodes = new Node[16];
+        long @NotNull [] childNanos = new long[16];
+        long @NotNull [] childBytes = new long[16];
+        int depth;
+        /* set on encoders without metrics by the outermost call */
+        @NotNull final CborMetrics metrics = new CborMetrics();
+
+        @NotNull Node top(@NotNull Node root) {
+            return depth == 0 ? root : nodes[depth - 1];
+        }
+
+        void push(@NotNull Node node) {
+            if (depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+                childNanos = Arrays.copyOf(childNanos, depth * 2);
+                childBytes = Arrays.copyOf(childBytes, depth * 2);
+            }
+            nodes[depth] = node;
+            childNanos[depth] = 0;
+            childBytes[depth] = 0;
+            depth++;
+        }
+
+        void pop(long nanos, long bytes, boolean miss) {
+            var node = nodes[--depth];
+            nodes[depth] = null;
+            node.calls.increment();
+            if (miss)
+                node.misses.increment();
+            node.totalNanos.add(nanos);
+            node.selfNanos.add(nanos - childNanos[depth]);
+            node.bytes.add(bytes);
+            node.selfBytes.add(bytes - childBytes[depth]);
+            if (depth > 0) {
+                childNanos[depth - 1] += nanos;
+                childBytes[depth - 1] += bytes;
+            }
+        }
+    }
+
+    /**
+     * @param name shown in the report
+     * @return a deserializer that records the costs of {@code deserializer} under {@code name}
+     * @since 1.0.0-rc.4
+     */
+    public <T> @NotNull CborDeserializer<T> profile(@NotNull String name, @NotNull CborDeserializer<T> deserializer) {
+        return new CborDeserializer<>() {
+            @Override
+            public T next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+                var stack = stacks.get();
+                stack.push(stack.top(root).child(this, name));
+                long start = System.nanoTime();
+                int position = decoder.position();
+                boolean miss = true;
+                try {
+                    var x = deserializer.next(decoder);
+                    miss = false;
+                    return x;
+                } finally {
+                    stack.pop(System.nanoTime() - start, decoder.position() - position, miss);
+                }
+            }
+
+            @Override
+            public @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+                var stack = stacks.get();
+                stack.push(stack.top(root).child(this, name));
+                long start = System.nanoTime();
+                int position = decoder.position();
+                Object x = NO_MATCH;
+                try {
+                    x = deserializer.tryNext(decoder);
+                    return x;
+                } finally {
+                    stack.pop(System.nanoTime() - start, decoder.position() - position, x == NO_MATCH);
+                }
+            }
+
+            @Override
+            public boolean mightAccept(@NotNull CborType type) {
+                return deserializer.mightAccept(type);
+            }
+
+            @Override
+            public boolean neverAccepts(@NotNull CborType type) {
+                return deserializer.neverAccepts(type);
+            }
+        };
+    }
+
+    /**
+     * @param name shown in the report
+     * @return a serializer that records the costs of {@code serializer} under {@code name}
+     * @since 1.0.0-rc.4
+     */
+    public <T> @NotNull CborSerializer<T> profile(@NotNull String name, @NotNull CborSerializer<T> serializer) {
+        return new CborSerializer<>() {
+            @Override
+            public void encode(@NotNull CborEncoder encoder, T value) throws IOException {
+                var stack = stacks.get();
+                var own = encoder.metrics() == null;
+                if (own)
+                    encoder.setMetrics(stack.metrics);
+                var metrics = encoder.metrics();
+                stack.push(stack.top(root).child(this, name));
+                long start = System.nanoTime();
+                long written = metrics.getEncodedBytes();
+                try {
+                    serializer.encode(encoder, value);
+                } finally {
+                    stack.pop(System.nanoTime() - start, metrics.getEncodedBytes() - written, false);
+                    if (own)
+                        encoder.setMetrics(null);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param name shown in the report
+     * @return a serde that records the costs of both directions of {@code serde} under {@code name}
+     * @since 1.0.0-rc.4
+     */
+    public <T> @NotNull CborSerDe<T> profile(@NotNull String name, @NotNull CborSerDe<T> serde) {
+        return new CborSerDe<>(profile(name, serde.decoder), profile(name, serde.encoder));
+    }
+
+    /**
+     * @return the node above the outermost profiled calls. It has no costs of its own
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull Node root() {
+        return root;
+    }
+
+    /**
+     * Forget all recorded costs. Should not be called while profiled nodes are running.
+     * @since 1.0.0-rc.4
+     */
+    public void reset() {
+        root.reset();
+    }
+
+    /**
+     * @return the cost tree as text, one line per node, most expensive first
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull String report() {
+        var sb = new StringBuilder();
+        sb.append(String.format("%12s %8s %12s %12s %14s %14s  %s%n", "calls", "misses", "total ms", "self ms", "bytes", "self bytes", "node"));
+        for (var child : root.children())
+            report(sb, child, 0);
+        return sb.toString();
+    }
+
+    private static void report(@NotNull StringBuilder sb, @NotNull Node node, int depth) {
+        sb.append(String.format("%12d %8d %12.3f %12.3f %14d %14d  %s%s%n",
+                node.calls(), node.misses(), node.totalNanos() / 1e6, node.selfNanos() / 1e6,
+                node.bytes(), node.selfBytes(), "  ".repeat(depth), node.name));
+        for (var child : node.children())
+            report(sb, child, depth + 1);
+    }
+}
@@ -0,0 +1,301 @@
+package dev.vxcc.tinyjcbor.serde;
+
+import dev.vxcc.tinyjcbor.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Codec for a (sealed) class hierarchy, where every subtype is identified by a discriminator.
+ * <p>Two layouts are supported:
+ * <ul>
+ *     <li>{@link #tagged(Class)}: the value is wrapped in a CBOR tag, whose number identifies the subtype</li>
+ *     <li>{@link #discriminated(Class)}: the value is the second item of a two-element array {@code [discriminator, value]},
+ *     where the discriminator is an unsigned integer or a text string</li>
+ * </ul>
+ * <p>Decoding looks up the subtype directly, without trying candidates: small numbers in an array, large ones in an open-addressing hash table.
+ * Encoding looks up the subtype by class, and writes pre-encoded tag heads and discriminators.
+ * <p>Immutable and thread safe, if the codecs of the subtypes are.
+ *
+ * <pre><code>
+ *     sealed interface Shape permits Circle, Square {}
+ *
+ *     static final CborSealedCodec&lt;Shape&gt; SHAPE = CborSealedCodec.tagged(Shape.class)
+ *         .variant(Circle.class, 40000, CIRCLE)
+ *         .variant(Square.class, 40001, SQUARE)
+ *         .build();
+ * </code></pre>
+ *
+ * @param <T> the common super type
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborSealedCodec<T> implements CborDeserializer<T>, CborSerializer<T> {
+    /** discriminators below this are looked up in an array */
+    private static final int DENSE_LIMIT = 256;
+
+    private final boolean tagged;
+    @NotNull private final CborLongTable<Variant<?>> byNumber;
+    @NotNull private final HashMap<String, Variant<?>> byName;
+    @NotNull private final ClassValue<Variant<?>> byClass;
+
+    private static final class Variant<S> {
+        @NotNull final Class<S> type;
+        final long number;
+        @Nullable final String name;
+        @NotNull final CborDeserializer<? extends S> decoder;
+        @NotNull final CborSerializer<S> encoder;
+        /** tag head, or encoded discriminator item */
+        final byte @NotNull [] headBig;
+        final byte @NotNull [] headLittle;
+
+        Variant(@NotNull Class<S> type, long number, @Nullable String name, boolean tagged,
+                @NotNull CborDeserializer<? extends S> decoder, @NotNull CborSerializer<S> encoder) {
+            this.type = type;
+            this.number = number;
+            this.name = name;
+            this.decoder = decoder;
+            this.encoder = encoder;
+            this.headBig = head(ByteOrder.BIG_ENDIAN, tagged);
+            this.headLittle = head(ByteOrder.LITTLE_ENDIAN, tagged);
+        }
+
+        private byte @NotNull [] head(@NotNull ByteOrder order, boolean tagged) {
+            if (tagged)
+                return CborRawEncoder.encodeHead(order, 6, number);
+            if (name == null)
+                return CborRawEncoder.encodeHead(order, 0, number);
+            return Cbor.encode(order, name, CborPrim.STRING);
+        }
+    }
+
+    private CborSealedCodec(boolean tagged, @NotNull ArrayList<Variant<?>> variants) {
+        this.tagged = tagged;
+
+        var byName = new HashMap<String, Variant<?>>();
+        var numbered = new ArrayList<Variant<?>>();
+        for (var v : variants) {
+            if (v.name != null)
+                byName.put(v.name, v);
+            else
+                numbered.add(v);
+        }
+        var keys = new long[numbered.size()];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = numbered.get(i).number;
+        this.byNumber = new CborLongTable<>(DENSE_LIMIT, keys, numbered);
+        this.byName = byName;
+
+        var all = variants.toArray(new Variant<?>[0]);
+        this.byClass = new ClassValue<>() {
+            @Override
+            protected Variant<?> computeValue(@NotNull Class<?> type) {
+                for (var v : all)
+                    if (v.type.isAssignableFrom(type))
+                        return v;
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Subtypes are identified by the number of a CBOR tag around the value
+     * @since 1.0.0-rc.4
+     */
+    public static <T> @NotNull Builder<T> tagged(@NotNull Class<T> base) {
+        return new Builder<>(base, true);
+    }
+
+    /**
+     * Subtypes are identified by an unsigned integer or text discriminator, in the array {@code [discriminator, value]}
+     * @since 1.0.0-rc.4
+     */
+    public static <T> @NotNull Builder<T> discriminated(@NotNull Class<T> base) {
+        return new Builder<>(base, false);
+    }
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public static final class Builder<T> {
+        @NotNull private final Class<T> base;
+        private final boolean tagged;
+        @NotNull private final ArrayList<Variant<?>> variants = new ArrayList<>();
+
+        private Builder(@NotNull Class<T> base, boolean tagged) {
+            this.base = base;
+            this.tagged = tagged;
+        }
+
+        private void add(@NotNull Variant<?> variant) {
+            if (!base.isAssignableFrom(variant.type))
+                throw new IllegalArgumentException(variant.type.getName() + " is not a subtype of " + base.getName());
+            for (var v : variants) {
+                if (v.type == variant.type)
+                    throw new IllegalArgumentException("Duplicate variant " + v.type.getName());
+                if (variant.name != null ? variant.name.equals(v.name) : v.name == null && v.number == variant.number)
+                    throw new IllegalArgumentException("Duplicate discriminator of " + v.type.getName() + " and " + variant.type.getName());
+            }
+            variants.add(variant);
+        }
+
+        /**
+         * @param number the tag number, or integer discriminator. Treated as unsigned
+         * @since 1.0.0-rc.4
+         */
+        public <S extends T> @NotNull Builder<T> variant(@NotNull Class<S> type, long number,
+                                                         @NotNull CborDeserializer<? extends S> decoder,
+                                                         @NotNull CborSerializer<S> encoder) {
+            add(new Variant<>(type, number, null, tagged, decoder, encoder));
+            return this;
+        }
+
+        /**
+         * @param number the tag number, or integer discriminator. Treated as unsigned
+         * @since 1.0.0-rc.4
+         */
+        public <S extends T> @NotNull Builder<T> variant(@NotNull Class<S> type, long number, @NotNull CborSerDe<S> serde) {
+            return variant(type, number, serde, serde);
+        }
+
+        /**
+         * @throws IllegalStateException if this builder is for a {@linkplain #tagged(Class) tagged} codec
+         * @since 1.0.0-rc.4
+         */
+        public <S extends T> @NotNull Builder<T> variant(@NotNull Class<S> type, @NotNull String name,
+                                                         @NotNull CborDeserializer<? extends S> decoder,
+                                                         @NotNull CborSerializer<S> encoder) {
+            if (tagged)
+                throw new IllegalStateException("Tagged codecs only support numeric discriminators");
+            add(new Variant<>(type, 0, name, false, decoder, encoder));
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException if this builder is for a {@linkplain #tagged(Class) tagged} codec
+         * @since 1.0.0-rc.4
+         */
+        public <S extends T> @NotNull Builder<T> variant(@NotNull Class<S> type, @NotNull String name, @NotNull CborSerDe<S> serde) {
+            return variant(type, name, serde, serde);
+        }
+
+        /**
+         * @throws IllegalStateException the base type is sealed, and there is no variant for one of its permitted subclasses
+         * @since 1.0.0-rc.4
+         */
+        public @NotNull CborSealedCodec<T> build() {
+            if (base.isSealed()) {
+                outer:
+                for (var permitted : base.getPermittedSubclasses()) {
+                    for (var v : variants)
+                        if (permitted.isAssignableFrom(v.type) || v.type.isAssignableFrom(permitted))
+                            continue outer;
+                    throw new IllegalStateException("No variant for permitted subclass " + permitted.getName());
+                }
+            }
+            return new CborSealedCodec<>(tagged, new ArrayList<>(variants));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+        return (T) decode(decoder, false);
+    }
+
+    @Override
+    public @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+        return decode(decoder, true);
+    }
+
+    private @Nullable Object decode(@NotNull CborDecoder decoder, boolean trial) {
+        if (tagged) {
+            if (trial && decoder.peekTokenType() != CborType.Tag)
+                return NO_MATCH;
+            long tag = decoder.readTag();
+            var v = byNumber.get(tag);
+            if (v == null) {
+                if (trial)
+                    return NO_MATCH;
+                throw new UnexpectedCborException.WrongTag(null, tag);
+            }
+            return trial ? v.decoder.tryNext(decoder) : v.decoder.next(decoder);
+        }
+
+        if (trial && decoder.peekTokenType() != CborType.Array)
+            return NO_MATCH;
+        long len = decoder.readArrayRaw();
+        if (len != 2 && len != Long.MIN_VALUE) {
+            if (trial)
+                return NO_MATCH;
+            throw len < 2
+                    ? new UnexpectedCborException.UnexpectedEndOfArray(len)
+                    : new UnexpectedCborException.ExpectedEndOfArray(2);
+        }
+
+        var type = decoder.peekTokenType();
+        Variant<?> v = null;
+        if (type == CborType.UnsignedInteger)
+            v = byNumber.get(decoder.readUInt());
+        else if (type == CborType.Text)
+            v = byName.get(decoder.read(CborPrim.STRING));
+        if (v == null) {
+            if (trial)
+                return NO_MATCH;
+            throw new UnexpectedCborException.Custom("Unknown discriminator in CBOR array");
+        }
+
+        Object x;
+        if (trial) {
+            x = v.decoder.tryNext(decoder);
+            if (x == NO_MATCH)
+                return NO_MATCH;
+        } else {
+            x = v.decoder.next(decoder);
+        }
+
+        if (len == Long.MIN_VALUE) {
+            if (decoder.peekTokenType() != CborType.Break) {
+                if (trial)
+                    return NO_MATCH;
+                throw new UnexpectedCborException.ExpectedEndOfArray(2);
+            }
+            decoder.readBreak();
+        }
+        return x;
+    }
+
+    @Override
+    public boolean mightAccept(@NotNull CborType type) {
+        return type == (tagged ? CborType.Tag : CborType.Array);
+    }
+
+    @Override
+    public boolean neverAccepts(@NotNull CborType type) {
+        return !mightAccept(type);
+    }
+
+    @Override
+    public void encode(@NotNull CborEncoder encoder, T value) throws IOException {
+        var v = byClass.get(value.getClass());
+        if (v == null)
+            throw new IllegalArgumentException("No variant for " + value.getClass().getName());
+        encode(encoder, v, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <S> void encode(@NotNull CborEncoder encoder, @NotNull Variant<S> v, Object value) throws IOException {
+        var head = encoder.unsafe.byteOrder() == ByteOrder.BIG_ENDIAN ? v.headBig : v.headLittle;
+        if (tagged) {
+            encoder.unsafe.writeRaw(head);
+        } else {
+            encoder.writeArray(2);
+            encoder.writeEncoded(head);
+        }
+        v.encoder.encode(encoder, (S) value);
+    }
+}
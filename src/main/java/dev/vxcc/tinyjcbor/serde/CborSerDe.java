@@ -5,6 +5,7 @@ import dev.vxcc.tinyjcbor.CborEncoder;
 import dev.vxcc.tinyjcbor.CborType;
 import dev.vxcc.tinyjcbor.UnexpectedCborException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 
@@ -28,6 +29,11 @@ public class CborSerDe<T> implements CborDeserializer<T>, CborSerializer<T> {
         return decoder.next(in);
     }
 
+    @Override
+    public @Nullable Object tryNext(@NotNull CborDecoder in) {
+        return decoder.tryNext(in);
+    }
+
     @Override
     public boolean mightAccept(@NotNull CborType type) {
         return decoder.mightAccept(type);
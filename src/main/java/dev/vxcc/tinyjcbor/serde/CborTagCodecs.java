@@ -0,0 +1,303 @@
+package dev.vxcc.tinyjcbor.serde;
+
+import dev.vxcc.tinyjcbor.*;
+import dev.vxcc.tinyjcbor.util.CborEmbedded;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Codecs for the standard tags in {@link CborTags}.
+ * <p>The {@code *_CONTENT} codecs read and write only the item inside the tag, for use with {@link CborTagRegistry}.
+ * The other codecs read and write the complete tagged item.
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborTagCodecs {
+    private CborTagCodecs() {}
+
+    private static final BigInteger TWO_64 = BigInteger.ONE.shiftLeft(64);
+
+    private static @NotNull BigInteger unsigned(long x) {
+        var v = BigInteger.valueOf(x);
+        return x >= 0 ? v : v.add(TWO_64);
+    }
+
+    /** the magnitude of a bignum. Up to 8 bytes are read without an array, larger ones are copied once */
+    private static @NotNull BigInteger readMagnitude(@NotNull CborDecoder decoder) {
+        var reader = decoder.readByteString();
+        long len = reader.remainingLength();
+        if (len >= 0 && len <= 8) {
+            long x = 0;
+            for (int i = 0; i < len; i++)
+                x = (x << 8) | (reader.nextByte() & 0xFF);
+            return unsigned(x);
+        }
+        return new BigInteger(1, reader.readAll());
+    }
+
+    private static void writeMagnitude(@NotNull CborEncoder encoder, @NotNull BigInteger magnitude) throws IOException {
+        var bytes = magnitude.toByteArray();
+        int off = bytes[0] == 0 ? 1 : 0;
+        encoder.writeByteString(bytes, off, bytes.length - off);
+    }
+
+    /**
+     * Content of {@link CborTags#UNSIGNED_BIGNUM}
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull BigInteger> UNSIGNED_BIGNUM_CONTENT =
+        new CborSerDe<>(
+            new CborPrim.PrimitiveDecoder<@NotNull BigInteger>(new CborType[]{ CborType.ByteString })
+    {
+        @Override
+        public BigInteger next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+            return readMagnitude(decoder);
+        }
+    }, (out, x) -> {
+        if (x.signum() < 0)
+            throw new IllegalArgumentException("Negative number in unsigned bignum");
+        writeMagnitude(out, x);
+    });
+
+    /**
+     * Content of {@link CborTags#NEGATIVE_BIGNUM}
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull BigInteger> NEGATIVE_BIGNUM_CONTENT =
+        new CborSerDe<>(
+            new CborPrim.PrimitiveDecoder<@NotNull BigInteger>(new CborType[]{ CborType.ByteString })
+    {
+        @Override
+        public BigInteger next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+            return readMagnitude(decoder).not();
+        }
+    }, (out, x) -> {
+        if (x.signum() >= 0)
+            throw new IllegalArgumentException("Non-negative number in negative bignum");
+        writeMagnitude(out, x.not());
+    });
+
+    /**
+     * Integers and bignums, as {@code BigInteger}.
+     * <p>Writes numbers that fit into a CBOR integer as such, and everything else as bignum.
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull BigInteger> BIG_INTEGER =
+        new CborSerDe<>(
+            new CborPrim.PrimitiveDecoder<@NotNull BigInteger>(new CborType[]{ CborType.UnsignedInteger, CborType.NegativeInteger, CborType.Tag })
+    {
+        @Override
+        public BigInteger next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+            var x = readBigInteger(decoder, false);
+            if (x == NO_MATCH)
+                throw new IllegalStateException();
+            return (BigInteger) x;
+        }
+
+        @Override
+        protected @Nullable Object tryNextAccepted(@NotNull CborDecoder decoder) {
+            return readBigInteger(decoder, true);
+        }
+    }, (out, x) -> {
+        int bits = x.bitLength();
+        if (bits < 64) {
+            out.writeSigned(x.longValue());
+        } else if (bits == 64 && x.signum() > 0) {
+            out.writeUnsigned(x.longValue());
+        } else if (bits == 64) {
+            /* below Long.MIN_VALUE, but -1 - arg still fits into a negative integer */
+            out.writeEncoded(CborRawEncoder.encodeHead(out.unsafe.byteOrder(), 1, ~x.longValue()));
+        } else if (x.signum() > 0) {
+            out.writeTag(CborTags.UNSIGNED_BIGNUM);
+            writeMagnitude(out, x);
+        } else {
+            out.writeTag(CborTags.NEGATIVE_BIGNUM);
+            writeMagnitude(out, x.not());
+        }
+    });
+
+    private static @NotNull Object readBigInteger(@NotNull CborDecoder decoder, boolean trial) {
+        var type = decoder.peekTokenType();
+        if (type == CborType.UnsignedInteger)
+            return unsigned(decoder.readUInt());
+        if (type == CborType.NegativeInteger) {
+            long x = decoder.readInt();
+            /* -1 - arg overflowed, if arg does not fit into a signed long */
+            return x < 0 ? BigInteger.valueOf(x) : unsigned(~x).not();
+        }
+        long tag = decoder.readTag();
+        if (tag == CborTags.UNSIGNED_BIGNUM)
+            return trial ? UNSIGNED_BIGNUM_CONTENT.tryNext(decoder) : UNSIGNED_BIGNUM_CONTENT.next(decoder);
+        if (tag == CborTags.NEGATIVE_BIGNUM)
+            return trial ? NEGATIVE_BIGNUM_CONTENT.tryNext(decoder) : NEGATIVE_BIGNUM_CONTENT.next(decoder);
+        if (trial)
+            return CborDeserializer.NO_MATCH;
+        throw new UnexpectedCborException.WrongTag(null, tag);
+    }
+
+    /**
+     * Content of {@link CborTags#DECIMAL_FRACTION}: {@code [exponent, mantissa]}
+     * <p>Mantissas that fit into a long are not converted to {@code BigInteger}.
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull BigDecimal> DECIMAL_FRACTION_CONTENT =
+        new CborSerDe<>(
+            new CborPrim.PrimitiveDecoder<@NotNull BigDecimal>(new CborType[]{ CborType.Array })
+    {
+        @Override
+        public BigDecimal next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+            long len = decoder.readArrayRaw();
+            if (len != 2)
+                throw len < 2
+                        ? new UnexpectedCborException.UnexpectedEndOfArray(len)
+                        : new UnexpectedCborException.ExpectedEndOfArray(2);
+            boolean negative = decoder.peekTokenType() == CborType.NegativeInteger;
+            long exponent = decoder.readInt();
+            if (negative != (exponent < 0) || exponent < -Integer.MAX_VALUE || exponent > Integer.MAX_VALUE)
+                throw new UnexpectedCborException.Custom("Decimal fraction exponent out of range");
+            int scale = (int) -exponent;
+
+            var type = decoder.peekTokenType();
+            if (type == CborType.UnsignedInteger) {
+                long m = decoder.readUInt();
+                if (m >= 0)
+                    return BigDecimal.valueOf(m, scale);
+                return new BigDecimal(unsigned(m), scale);
+            }
+            if (type == CborType.NegativeInteger) {
+                long m = decoder.readInt();
+                if (m < 0)
+                    return BigDecimal.valueOf(m, scale);
+                return new BigDecimal(unsigned(~m).not(), scale);
+            }
+            return new BigDecimal(BIG_INTEGER.next(decoder), scale);
+        }
+    }, (out, x) -> {
+        out.writeArray(2);
+        out.writeSigned(-(long) x.scale());
+        var unscaled = x.unscaledValue();
+        if (unscaled.bitLength() < 64)
+            out.writeSigned(unscaled.longValue());
+        else
+            BIG_INTEGER.encode(out, unscaled);
+    });
+
+    /**
+     * Content of {@link CborTags#EPOCH_DATE_TIME}: seconds since the epoch, as integer or float.
+     * <p>Instants with fractional seconds are written as 64-bit float, which might lose precision.
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull Instant> EPOCH_TIME_CONTENT =
+        new CborSerDe<>(
+            new CborPrim.PrimitiveDecoder<@NotNull Instant>(new CborType[]{
+                    CborType.UnsignedInteger, CborType.NegativeInteger, CborType.Float16, CborType.Float32, CborType.Float64 })
+    {
+        @Override
+        public Instant next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+            var type = decoder.peekTokenType();
+            try {
+                if (type == CborType.UnsignedInteger || type == CborType.NegativeInteger) {
+                    long seconds = decoder.readInt();
+                    if ((type == CborType.UnsignedInteger) != (seconds >= 0))
+                        throw new UnexpectedCborException.Custom("Epoch time out of range");
+                    return Instant.ofEpochSecond(seconds);
+                }
+                double d = CborPrim.MOST_DOUBLE.next(decoder);
+                if (!Double.isFinite(d))
+                    throw new UnexpectedCborException.Custom("Epoch time is not finite");
+                double seconds = Math.floor(d);
+                long nanos = Math.round((d - seconds) * 1e9);
+                return Instant.ofEpochSecond((long) seconds, nanos);
+            } catch (DateTimeException e) {
+                throw new UnexpectedCborException.Custom("Epoch time out of range");
+            }
+        }
+    }, (out, x) -> {
+        if (x.getNano() == 0)
+            out.writeSigned(x.getEpochSecond());
+        else
+            out.writeFloat64(x.getEpochSecond() + x.getNano() / 1e9);
+    });
+
+    /**
+     * Content of {@link CborTags#UUID}: 16 byte string. Read as two longs, without an intermediate array.
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull UUID> UUID_CONTENT =
+        new CborSerDe<>(
+            new CborPrim.PrimitiveDecoder<@NotNull UUID>(new CborType[]{ CborType.ByteString })
+    {
+        @Override
+        public UUID next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+            var reader = decoder.readByteString();
+            long len = reader.remainingLength();
+            if (len == -1) {
+                var bytes = reader.readAll();
+                if (bytes.length != 16)
+                    throw new UnexpectedCborException.Custom("UUID has to be 16 bytes long");
+                var buf = ByteBuffer.wrap(bytes);
+                return new UUID(buf.getLong(), buf.getLong());
+            }
+            if (len != 16)
+                throw new UnexpectedCborException.Custom("UUID has to be 16 bytes long");
+            long msb = 0;
+            for (int i = 0; i < 8; i++)
+                msb = (msb << 8) | (reader.nextByte() & 0xFF);
+            long lsb = 0;
+            for (int i = 0; i < 8; i++)
+                lsb = (lsb << 8) | (reader.nextByte() & 0xFF);
+            return new UUID(msb, lsb);
+        }
+    }, (out, x) -> {
+        var buf = ByteBuffer.allocate(16);
+        buf.putLong(x.getMostSignificantBits());
+        buf.putLong(x.getLeastSignificantBits());
+        out.writeByteString(buf.array());
+    });
+
+    /**
+     * {@link CborTags#DECIMAL_FRACTION}
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull BigDecimal> BIG_DECIMAL = tagged(CborTags.DECIMAL_FRACTION, DECIMAL_FRACTION_CONTENT);
+
+    /**
+     * {@link CborTags#EPOCH_DATE_TIME}
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull Instant> EPOCH_TIME = tagged(CborTags.EPOCH_DATE_TIME, EPOCH_TIME_CONTENT);
+
+    /**
+     * {@link CborTags#UUID}
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull UUID> UUID = tagged(CborTags.UUID, UUID_CONTENT);
+
+    private static <T> @NotNull CborSerDe<T> tagged(long tag, @NotNull CborSerDe<T> content) {
+        return new CborSerDe<>(new CborFixedTagDecoder<>(tag, content), new CborFixedTagEncoder<>(tag, content));
+    }
+
+    /**
+     * Register handlers for all tags supported here
+     * @return {@code registry}
+     * @since 1.0.0-rc.4
+     */
+    public static @NotNull CborTagRegistry registerAll(@NotNull CborTagRegistry registry) {
+        return registry
+                .registerDecoder(CborTags.UNSIGNED_BIGNUM, BigInteger.class, UNSIGNED_BIGNUM_CONTENT)
+                .registerDecoder(CborTags.NEGATIVE_BIGNUM, BigInteger.class, NEGATIVE_BIGNUM_CONTENT)
+                .registerEncoder(BigInteger.class, BIG_INTEGER)
+                .register(CborTags.DECIMAL_FRACTION, BigDecimal.class, DECIMAL_FRACTION_CONTENT)
+                .register(CborTags.EPOCH_DATE_TIME, Instant.class, EPOCH_TIME_CONTENT)
+                .register(CborTags.UUID, UUID.class, UUID_CONTENT)
+                .register(CborTags.ENCODED_CBOR, CborEmbedded.class, CborEmbedded.CONTENT);
+    }
+}
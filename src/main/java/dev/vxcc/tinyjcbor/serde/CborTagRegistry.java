@@ -0,0 +1,250 @@
+package dev.vxcc.tinyjcbor.serde;
+
+import dev.vxcc.tinyjcbor.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps CBOR tag numbers to handlers, that convert the tagged item to a domain object and back.
+ * <p>Tags below 1024 are looked up in a flat array, larger tags in an open-addressing table of primitive arrays.
+ * The registry is consulted by the typed decoders {@link #decoder(Class)} and by {@link dev.vxcc.tinyjcbor.util.CborValue#codec(CborTagRegistry)},
+ * which fills {@link dev.vxcc.tinyjcbor.util.CborValue.Tag#decoded}.
+ * <p>As deserializer and serializer, the registry reads any registered tag, and writes any object whose class has been registered.
+ * <p>Registering is synchronized and copies the tables, lookups do not lock. Meant to be set up once, and then only read.
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborTagRegistry implements CborDeserializer<Object>, CborSerializer<Object> {
+    private static final int DENSE_LIMIT = 1024;
+
+    /**
+     * Handler for one tag number
+     * @param <T> type of the domain object
+     * @since 1.0.0-rc.4
+     */
+    public static final class Entry<T> {
+        public final long tag;
+        @NotNull public final Class<T> type;
+        /** Reads and writes the item inside the tag */
+        @NotNull public final CborSerDe<T> content;
+        private final byte @NotNull [] headBig;
+        private final byte @NotNull [] headLittle;
+
+        private Entry(long tag, @NotNull Class<T> type, @NotNull CborSerDe<T> content) {
+            this.tag = tag;
+            this.type = type;
+            this.content = content;
+            this.headBig = CborRawEncoder.encodeHead(ByteOrder.BIG_ENDIAN, 6, tag);
+            this.headLittle = CborRawEncoder.encodeHead(ByteOrder.LITTLE_ENDIAN, 6, tag);
+        }
+
+        /**
+         * Write the pre-encoded tag head, and then the value
+         * @throws IOException when writing to the {@code OutputStream} fails
+         * @since 1.0.0-rc.4
+         */
+        public void encode(@NotNull CborEncoder encoder, T value) throws IOException {
+            encoder.unsafe.writeRaw(encoder.unsafe.byteOrder() == ByteOrder.BIG_ENDIAN ? headBig : headLittle);
+            content.encode(encoder, value);
+        }
+    }
+
+    private record ClassEncoder<T>(@NotNull Class<T> type, @NotNull CborSerializer<T> encoder) {}
+
+    private static final class Tables {
+        @NotNull final List<Entry<?>> entries;
+        @NotNull final List<ClassEncoder<?>> encoders;
+        @NotNull final CborLongTable<Entry<?>> byTag;
+        @NotNull final ClassValue<CborSerializer<?>> byClass;
+
+        Tables(@NotNull List<Entry<?>> entries, @NotNull List<ClassEncoder<?>> encoders) {
+            this.entries = entries;
+            this.encoders = encoders;
+            var keys = new long[entries.size()];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = entries.get(i).tag;
+            this.byTag = new CborLongTable<>(DENSE_LIMIT, keys, entries);
+            this.byClass = new ClassValue<>() {
+                @Override
+                protected CborSerializer<?> computeValue(@NotNull Class<?> type) {
+                    for (var e : encoders)
+                        if (e.type == type)
+                            return e.encoder;
+                    for (var e : encoders)
+                        if (e.type.isAssignableFrom(type))
+                            return e.encoder;
+                    return null;
+                }
+            };
+        }
+    }
+
+    private volatile @NotNull Tables tables = new Tables(List.of(), List.of());
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public CborTagRegistry() {}
+
+    /**
+     * Register a handler for a tag, replacing the previous handler for that tag.
+     * <p>Objects of the class are then encoded with that tag, unless an encoder for the class has been registered before.
+     *
+     * @param tag treated as unsigned integer
+     * @param type class of the decoded domain objects
+     * @param content reads and writes the item inside the tag
+     * @since 1.0.0-rc.4
+     */
+    public synchronized <T> @NotNull CborTagRegistry register(long tag, @NotNull Class<T> type, @NotNull CborSerDe<T> content) {
+        var entry = new Entry<>(tag, type, content);
+        update(entry, new ClassEncoder<>(type, entry::encode));
+        return this;
+    }
+
+    /**
+     * Register a handler for decoding a tag only, replacing the previous handler for that tag.
+     * <p>Useful if multiple tags decode to the same class, see {@link #registerEncoder(Class, CborSerializer)}
+     *
+     * @param tag treated as unsigned integer
+     * @param type class of the decoded domain objects
+     * @param content reads and writes the item inside the tag. Writing is used when the registry encodes objects of {@code type}
+     * @since 1.0.0-rc.4
+     */
+    public synchronized <T> @NotNull CborTagRegistry registerDecoder(long tag, @NotNull Class<T> type, @NotNull CborSerDe<T> content) {
+        update(new Entry<>(tag, type, content), null);
+        return this;
+    }
+
+    /**
+     * Register how objects of a class are encoded, including the tag
+     * @since 1.0.0-rc.4
+     */
+    public synchronized <T> @NotNull CborTagRegistry registerEncoder(@NotNull Class<T> type, @NotNull CborSerializer<T> encoder) {
+        update(null, new ClassEncoder<>(type, encoder));
+        return this;
+    }
+
+    private void update(@Nullable Entry<?> entry, @Nullable ClassEncoder<?> encoder) {
+        var old = tables;
+        var entries = new ArrayList<Entry<?>>(old.entries.size() + 1);
+        for (var e : old.entries)
+            if (entry == null || e.tag != entry.tag)
+                entries.add(e);
+        if (entry != null)
+            entries.add(entry);
+        var encoders = new ArrayList<>(old.encoders);
+        if (encoder != null)
+            encoders.add(encoder);
+        tables = new Tables(List.copyOf(entries), List.copyOf(encoders));
+    }
+
+    /**
+     * @param tag treated as unsigned integer
+     * @return the handler for the tag, or {@code null}
+     * @since 1.0.0-rc.4
+     */
+    public @Nullable Entry<?> get(long tag) {
+        return tables.byTag.get(tag);
+    }
+
+    /**
+     * @return the encoder for objects of the given class, or {@code null}
+     * @since 1.0.0-rc.4
+     */
+    @SuppressWarnings("unchecked")
+    public <T> @Nullable CborSerializer<? super T> encoder(@NotNull Class<T> type) {
+        return (CborSerializer<? super T>) tables.byClass.get(type);
+    }
+
+    /**
+     * Reads a tag, and decodes its content with the registered handler
+     * @throws UnexpectedCborException the next item is not a tag, the tag is not registered, or the content does not match
+     */
+    @Override
+    public Object next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+        long tag = decoder.readTag();
+        var entry = get(tag);
+        if (entry == null)
+            throw new UnexpectedCborException.WrongTag(null, tag);
+        return entry.content.next(decoder);
+    }
+
+    @Override
+    public @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+        if (decoder.peekTokenType() != CborType.Tag)
+            return NO_MATCH;
+        var entry = get(decoder.readTag());
+        if (entry == null)
+            return NO_MATCH;
+        return entry.content.tryNext(decoder);
+    }
+
+    @Override
+    public boolean mightAccept(@NotNull CborType type) {
+        return type == CborType.Tag;
+    }
+
+    @Override
+    public boolean neverAccepts(@NotNull CborType type) {
+        return type != CborType.Tag;
+    }
+
+    /**
+     * Writes the value with the handler registered for its class
+     * @throws IllegalArgumentException no handler is registered for the class of the value
+     */
+    @Override
+    public void encode(@NotNull CborEncoder encoder, Object value) throws IOException {
+        encode(encoder, value, value.getClass());
+    }
+
+    private <T> void encode(@NotNull CborEncoder encoder, Object value, @NotNull Class<T> type) throws IOException {
+        var ser = encoder(type);
+        if (ser == null)
+            throw new IllegalArgumentException("No tag registered for " + type.getName());
+        ser.encode(encoder, type.cast(value));
+    }
+
+    /**
+     * Decoder for tagged items, that have to decode to the given type.
+     * <p>Looks up the handler on every call, so it sees handlers registered later on.
+     * @since 1.0.0-rc.4
+     */
+    public <T> @NotNull CborDeserializer<T> decoder(@NotNull Class<T> type) {
+        return new CborDeserializer<>() {
+            @Override
+            public T next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+                long tag = decoder.readTag();
+                var entry = get(tag);
+                if (entry == null || !type.isAssignableFrom(entry.type))
+                    throw new UnexpectedCborException.WrongTag(null, tag);
+                return type.cast(entry.content.next(decoder));
+            }
+
+            @Override
+            public @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+                if (decoder.peekTokenType() != CborType.Tag)
+                    return NO_MATCH;
+                var entry = get(decoder.readTag());
+                if (entry == null || !type.isAssignableFrom(entry.type))
+                    return NO_MATCH;
+                return entry.content.tryNext(decoder);
+            }
+
+            @Override
+            public boolean mightAccept(@NotNull CborType t) {
+                return t == CborType.Tag;
+            }
+
+            @Override
+            public boolean neverAccepts(@NotNull CborType t) {
+                return t != CborType.Tag;
+            }
+        };
+    }
+}
@@ -4,6 +4,7 @@ import dev.vxcc.tinyjcbor.CborDecoder;
 import dev.vxcc.tinyjcbor.CborType;
 import dev.vxcc.tinyjcbor.UnexpectedCborException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public abstract class CborTaggedDecoder<I, O> extends CborPrim.PrimitiveDecoder<O> {
     @NotNull private final CborDeserializer<I> item;
@@ -22,5 +23,19 @@ public abstract class CborTaggedDecoder<I, O> extends CborPrim.PrimitiveDecoder<
         return process(tag, x);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    protected final @Nullable Object tryNextAccepted(@NotNull CborDecoder decoder) {
+        var tag = decoder.readTag();
+        var x = item.tryNext(decoder);
+        if (x == NO_MATCH)
+            return NO_MATCH;
+        try {
+            return process(tag, (I) x);
+        } catch (UnexpectedCborException ignored) {
+            return NO_MATCH;
+        }
+    }
+
     protected abstract O process(long tag, @NotNull I parsed) throws UnexpectedCborException;
 }
@@ -11,33 +11,44 @@ import java.util.*;
 /**
  * A decoder that efficiently goes through all the input decoders, and returns the first match.
  * It is considered a match when a decoder does not throw {@code UnexpectedCborException}
+ * <p>The candidates are looked up by the type of the next token, in a table built on construction.
+ * Backtracking uses the snapshot stack of the decoder, so one instance can be shared between threads,
+ * and be nested inside itself in recursive schemas.
  *
  * @param <T> The type that all decoders extend
  *
  * @since 1.0.0-rc.1
  */
 public final class CborVariantDecoder<T> implements CborDeserializer<T> {
-    @NotNull private final Object[] decoders;
-    @NotNull private final Map<CborType, CborDeserializer<?>[]> byType;
-    @NotNull private final Set<CborType> neverAccepts;
-    @NotNull private final CborDecoder.Snapshot snapshot = new CborDecoder.Snapshot();
-    @Nullable private String expected;
+    private static final CborType[] TYPES = CborType.values();
+
+    @NotNull private final List<CborDeserializer<? extends T>> decoders;
+    /** candidates, indexed by {@link CborType#ordinal()} */
+    @NotNull private final CborDeserializer<?>[][] byType;
+    private final boolean @NotNull [] neverAccepts;
+    @Nullable private volatile String expected;
 
     public CborVariantDecoder(@NotNull List<CborDeserializer<? extends T>> decodersIn) {
+        this(decodersIn, null);
+    }
+
+    /**
+     * @param expected description of the accepted values, used in the message of the thrown {@link UnexpectedCborException.UnexpectedType}
+     * @since 1.0.0-rc.4
+     */
+    public CborVariantDecoder(@NotNull List<CborDeserializer<? extends T>> decodersIn, @Nullable String expected) {
         var decoders = new ArrayList<CborDeserializer<? extends T>>();
         for (var decoder : decodersIn) {
             if (decoder instanceof CborVariantDecoder<? extends T> v) {
-                for (var x : v.decoders) {
-                    decoders.add((CborDeserializer<? extends T>) x);
-                }
+                decoders.addAll(v.decoders);
             } else {
                 decoders.add(decoder);
             }
         }
 
-        var byType = new HashMap<CborType, CborDeserializer<?>[]>();
-        var neverAccepts = new HashSet<CborType>();
-        for (var type : CborType.values()) {
+        var byType = new CborDeserializer<?>[TYPES.length][];
+        var neverAccepts = new boolean[TYPES.length];
+        for (var type : TYPES) {
             var anyNotNeverAccepts = false;
 
             var possible = new ArrayList<CborDeserializer<?>>();
@@ -47,46 +58,74 @@ public final class CborVariantDecoder<T> implements CborDeserializer<T> {
                 if (!decoder.neverAccepts(type))
                     anyNotNeverAccepts = true;
             }
-            var arr = new CborDeserializer[possible.size()];
-            possible.toArray(arr);
-            byType.put(type, arr);
-
-            if (!anyNotNeverAccepts)
-                neverAccepts.add(type);
+            byType[type.ordinal()] = possible.toArray(new CborDeserializer<?>[0]);
+            neverAccepts[type.ordinal()] = !anyNotNeverAccepts;
         }
         this.byType = byType;
         this.neverAccepts = neverAccepts;
-        this.decoders = decoders.toArray();
+        this.decoders = List.copyOf(decoders);
+        this.expected = expected;
     }
 
+    /**
+     * Has to be called before the decoder is shared with other threads
+     * @deprecated use {@link #CborVariantDecoder(List, String)} instead
+     */
+    @Deprecated
     public void setExpected(@Nullable String expected) {
         this.expected = expected;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public T next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
         var type = decoder.peekTokenType();
-        var possible = byType.get(type);
-        if (possible != null) {
-            snapshot.from(decoder);
+        var x = tryNext(decoder, type);
+        if (x == NO_MATCH)
+            throw new UnexpectedCborException.UnexpectedType(expected, type);
+        return (T) x;
+    }
+
+    /**
+     * Tries the candidates with {@link CborDeserializer#tryNext(CborDecoder)}, so no exceptions are constructed for mismatching candidates.
+     * <p>On mismatch, the decoder is reset to the start of the item.
+     * @since 1.0.0-rc.4
+     */
+    @Override
+    public @Nullable Object tryNext(@NotNull CborDecoder decoder) {
+        return tryNext(decoder, decoder.peekTokenType());
+    }
+
+    private @Nullable Object tryNext(@NotNull CborDecoder decoder, @Nullable CborType type) {
+        if (type == null)
+            return NO_MATCH;
+        var possible = byType[type.ordinal()];
+        if (possible.length == 0)
+            return NO_MATCH;
+        var snapshot = decoder.acquireSnapshot();
+        try {
             for (var child : possible) {
-                try {
-                    return ((CborDeserializer<? extends T>) child).next(decoder);
-                } catch (UnexpectedCborException ignored) {
-                    decoder.reset(snapshot);
-                }
+                var x = child.tryNext(decoder);
+                if (x != NO_MATCH)
+                    return x;
+                var metrics = decoder.metrics();
+                if (metrics != null)
+                    metrics.variantBacktrack();
+                decoder.rewind(snapshot);
             }
+        } finally {
+            decoder.releaseSnapshot(snapshot);
         }
-        throw new UnexpectedCborException.UnexpectedType(expected, type);
+        return NO_MATCH;
     }
 
     @Override
     public boolean mightAccept(@NotNull CborType type) {
-        return byType.containsKey(type);
+        return byType[type.ordinal()].length != 0;
     }
 
     @Override
     public boolean neverAccepts(@NotNull CborType type) {
-        return neverAccepts.contains(type);
+        return neverAccepts[type.ordinal()];
     }
 }
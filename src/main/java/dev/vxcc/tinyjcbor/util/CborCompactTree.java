@@ -0,0 +1,531 @@
+package dev.vxcc.tinyjcbor.util;
+
+import dev.vxcc.tinyjcbor.*;
+import dev.vxcc.tinyjcbor.serde.CborDeserializer;
+import dev.vxcc.tinyjcbor.serde.CborSerializer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Memory efficient, immutable alternative to a tree of {@link CborValue}s.
+ * <p>All nodes are stored in pre-order in parallel primitive arrays, and the contents of all byte strings and texts
+ * are stored in one shared byte pool, so there is no object per node.
+ * Nodes are referenced by their index, the root node is {@code 0}.
+ * <br><br>
+ *
+ * Example:
+ * <pre><code>
+ *     var tree = Cbor.decode(buffer, CborCompactTree.CODEC);
+ *     int users = tree.get(tree.root(), "users");
+ *     for (int user = tree.firstChild(users); user != -1; user = tree.nextSibling(users, user)) {
+ *         String name = tree.text(tree.get(user, "name"));
+ *     }
+ * </code></pre>
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborCompactTree {
+    private static final byte UNSIGNED = 0;
+    private static final byte SIGNED = 1;
+    private static final byte FLOAT16 = 2;
+    private static final byte FLOAT32 = 3;
+    private static final byte FLOAT64 = 4;
+    private static final byte STR = 5;
+    private static final byte BYTES = 6;
+    private static final byte ARR = 7;
+    private static final byte DICT = 8;
+    private static final byte TAG = 9;
+    private static final byte BOOL = 10;
+    private static final byte NULL = 11;
+    private static final byte UNDEFINED = 12;
+    private static final byte SIMPLE = 13;
+
+    /** kind of each node */
+    private final byte @NotNull [] kinds;
+    /** value of scalars, tag numbers, number of children of arrays, number of pairs of maps, pool offset of strings */
+    private final long @NotNull [] args;
+    /** index after the subtree of arrays, maps and tags, length of strings */
+    private final int @NotNull [] aux;
+    private final int count;
+    private final byte @NotNull [] pool;
+
+    private CborCompactTree(@NotNull Builder b) {
+        this.count = b.count;
+        this.kinds = Arrays.copyOf(b.kinds, b.count);
+        this.args = Arrays.copyOf(b.args, b.count);
+        this.aux = Arrays.copyOf(b.aux, b.count);
+        this.pool = Arrays.copyOf(b.pool, b.poolSize);
+    }
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public static @NotNull CborCompactTree of(@NotNull CborValue value) {
+        var b = new Builder();
+        b.add(value);
+        return new CborCompactTree(b);
+    }
+
+    /**
+     * @return the root node
+     * @since 1.0.0-rc.4
+     */
+    public int root() {
+        return 0;
+    }
+
+    /**
+     * @return number of nodes in the tree
+     * @since 1.0.0-rc.4
+     */
+    public int nodeCount() {
+        return count;
+    }
+
+    private byte kind(int node) {
+        if (node < 0 || node >= count)
+            throw new IndexOutOfBoundsException(node);
+        return kinds[node];
+    }
+
+    private void expect(int node, byte kind, @NotNull CborType expected) {
+        if (kind(node) != kind)
+            throw new UnexpectedCborException.UnexpectedType(expected.name(), type(node));
+    }
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull CborType type(int node) {
+        return switch (kind(node)) {
+            case UNSIGNED -> CborType.UnsignedInteger;
+            case SIGNED -> args[node] < 0 ? CborType.NegativeInteger : CborType.UnsignedInteger;
+            case FLOAT16 -> CborType.Float16;
+            case FLOAT32 -> CborType.Float32;
+            case FLOAT64 -> CborType.Float64;
+            case STR -> CborType.Text;
+            case BYTES -> CborType.ByteString;
+            case ARR -> CborType.Array;
+            case DICT -> CborType.Map;
+            case TAG -> CborType.Tag;
+            case BOOL -> args[node] != 0 ? CborType.True : CborType.False;
+            case NULL -> CborType.Null;
+            case UNDEFINED -> CborType.Undefined;
+            default -> CborType.SimpleValue;
+        };
+    }
+
+    /**
+     * @return the value of a signed or unsigned integer node
+     * @throws UnexpectedCborException node is not an integer
+     * @since 1.0.0-rc.4
+     */
+    public long integer(int node) throws UnexpectedCborException {
+        var k = kind(node);
+        if (k != UNSIGNED && k != SIGNED)
+            throw new UnexpectedCborException.UnexpectedType(CborType.UnsignedInteger.name() + " or " + CborType.NegativeInteger.name(), type(node));
+        return args[node];
+    }
+
+    /**
+     * @throws UnexpectedCborException node is not a 16-bit float
+     * @since 1.0.0-rc.4
+     */
+    public short float16(int node) throws UnexpectedCborException {
+        expect(node, FLOAT16, CborType.Float16);
+        return (short) args[node];
+    }
+
+    /**
+     * @throws UnexpectedCborException node is not a 32-bit float
+     * @since 1.0.0-rc.4
+     */
+    public float float32(int node) throws UnexpectedCborException {
+        expect(node, FLOAT32, CborType.Float32);
+        return Float.intBitsToFloat((int) args[node]);
+    }
+
+    /**
+     * @throws UnexpectedCborException node is not a 64-bit float
+     * @since 1.0.0-rc.4
+     */
+    public double float64(int node) throws UnexpectedCborException {
+        expect(node, FLOAT64, CborType.Float64);
+        return Double.longBitsToDouble(args[node]);
+    }
+
+    /**
+     * @throws UnexpectedCborException node is not true or false
+     * @since 1.0.0-rc.4
+     */
+    public boolean bool(int node) throws UnexpectedCborException {
+        expect(node, BOOL, CborType.True);
+        return args[node] != 0;
+    }
+
+    /**
+     * @throws UnexpectedCborException node is not a simple value
+     * @since 1.0.0-rc.4
+     */
+    public byte simple(int node) throws UnexpectedCborException {
+        expect(node, SIMPLE, CborType.SimpleValue);
+        return (byte) args[node];
+    }
+
+    /**
+     * @return the tag number of a tag node. The tagged item is {@code firstChild(node)}
+     * @throws UnexpectedCborException node is not a tag
+     * @since 1.0.0-rc.4
+     */
+    public long tag(int node) throws UnexpectedCborException {
+        expect(node, TAG, CborType.Tag);
+        return args[node];
+    }
+
+    /**
+     * @throws UnexpectedCborException node is not a text
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull String text(int node) throws UnexpectedCborException {
+        expect(node, STR, CborType.Text);
+        return new String(pool, (int) args[node], aux[node], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return read-only view of the utf8 bytes of a text node
+     * @throws UnexpectedCborException node is not a text
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull ByteBuffer textUtf8(int node) throws UnexpectedCborException {
+        expect(node, STR, CborType.Text);
+        return ByteBuffer.wrap(pool, (int) args[node], aux[node]).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return read-only view of the bytes of a byte string node
+     * @throws UnexpectedCborException node is not a byte string
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull ByteBuffer bytes(int node) throws UnexpectedCborException {
+        expect(node, BYTES, CborType.ByteString);
+        return ByteBuffer.wrap(pool, (int) args[node], aux[node]).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return number of items of an array node, or number of pairs of a map node
+     * @throws UnexpectedCborException node is not an array or map
+     * @since 1.0.0-rc.4
+     */
+    public long size(int node) throws UnexpectedCborException {
+        var k = kind(node);
+        if (k != ARR && k != DICT)
+            throw new UnexpectedCborException.UnexpectedType(CborType.Array.name() + " or " + CborType.Map.name(), type(node));
+        return args[node];
+    }
+
+    private int end(int node) {
+        return switch (kinds[node]) {
+            case ARR, DICT, TAG -> aux[node];
+            default -> node + 1;
+        };
+    }
+
+    /**
+     * @return the first child of an array, map or tag node, or {@code -1} if it has no children.
+     *         The children of maps alternate between keys and values.
+     * @since 1.0.0-rc.4
+     */
+    public int firstChild(int node) {
+        return switch (kind(node)) {
+            case ARR, DICT, TAG -> node + 1 < aux[node] ? node + 1 : -1;
+            default -> -1;
+        };
+    }
+
+    /**
+     * @param parent the array, map or tag node that contains {@code node}
+     * @return the child of {@code parent} after {@code node}, or {@code -1} if it is the last child
+     * @since 1.0.0-rc.4
+     */
+    public int nextSibling(int parent, int node) {
+        var k = kind(parent);
+        if ((k != ARR && k != DICT && k != TAG) || node <= parent || node >= aux[parent])
+            throw new IllegalArgumentException("node is not a child of parent");
+        int next = end(node);
+        return next < aux[parent] ? next : -1;
+    }
+
+    /**
+     * @return the child at the given index of an array node, or {@code -1} if out of bounds
+     * @throws UnexpectedCborException node is not an array
+     * @since 1.0.0-rc.4
+     */
+    public int get(int node, long index) throws UnexpectedCborException {
+        expect(node, ARR, CborType.Array);
+        if (index < 0 || index >= args[node])
+            return -1;
+        int child = node + 1;
+        for (long i = 0; i < index; i++)
+            child = end(child);
+        return child;
+    }
+
+    /**
+     * @return the value node for the given text key of a map node, or {@code -1} if there is no such key
+     * @throws UnexpectedCborException node is not a map
+     * @since 1.0.0-rc.4
+     */
+    public int get(int node, @NotNull String key) throws UnexpectedCborException {
+        expect(node, DICT, CborType.Map);
+        var utf8 = key.getBytes(StandardCharsets.UTF_8);
+        int child = node + 1;
+        for (long i = 0; i < args[node]; i++) {
+            int val = end(child);
+            if (kinds[child] == STR) {
+                int off = (int) args[child];
+                if (Arrays.equals(pool, off, off + aux[child], utf8, 0, utf8.length))
+                    return val;
+            }
+            child = end(val);
+        }
+        return -1;
+    }
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull CborValue toValue() {
+        return toValue(root());
+    }
+
+    /**
+     * Convert the subtree at the given node to a {@link CborValue}
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull CborValue toValue(int node) {
+        return switch (kind(node)) {
+            case UNSIGNED -> new CborValue.Unsigned(args[node]);
+            case SIGNED -> new CborValue.Signed(args[node]);
+            case FLOAT16 -> new CborValue.Float16((short) args[node]);
+            case FLOAT32 -> new CborValue.Float32(Float.intBitsToFloat((int) args[node]));
+            case FLOAT64 -> new CborValue.Float64(Double.longBitsToDouble(args[node]));
+            case STR -> new CborValue.Str(text(node));
+            case BYTES -> new CborValue.Bytes(Arrays.copyOfRange(pool, (int) args[node], (int) args[node] + aux[node]));
+            case ARR -> {
+                var out = new ArrayList<CborValue>((int) Math.min(args[node], Integer.MAX_VALUE));
+                for (int c = node + 1; c < aux[node]; c = end(c))
+                    out.add(toValue(c));
+                yield new CborValue.Arr(out);
+            }
+            case DICT -> {
+                var out = new CborValueMap((int) Math.min(args[node], Integer.MAX_VALUE));
+                for (int c = node + 1; c < aux[node]; ) {
+                    int v = end(c);
+                    out.put(toValue(c), toValue(v));
+                    c = end(v);
+                }
+                yield new CborValue.Dict(out);
+            }
+            case TAG -> new CborValue.Tag(args[node], toValue(node + 1));
+            case BOOL -> args[node] != 0 ? CborValue.Bool.TRUE : CborValue.Bool.FALSE;
+            case NULL -> CborValue.Null.VALUE;
+            case UNDEFINED -> CborValue.Undefined.VALUE;
+            default -> new CborValue.Simple((byte) args[node]);
+        };
+    }
+
+    private void encode(@NotNull CborEncoder encoder, int node) throws IOException {
+        switch (kinds[node]) {
+            case UNSIGNED -> encoder.writeUnsigned(args[node]);
+            case SIGNED -> encoder.writeSigned(args[node]);
+            case FLOAT16 -> encoder.writeFloat16((short) args[node]);
+            case FLOAT32 -> encoder.writeFloat32(Float.intBitsToFloat((int) args[node]));
+            case FLOAT64 -> encoder.writeFloat64(Double.longBitsToDouble(args[node]));
+            case STR -> encoder.writeTextUtf8(pool, (int) args[node], aux[node]);
+            case BYTES -> encoder.writeByteString(pool, (int) args[node], aux[node]);
+            case ARR, DICT -> {
+                if (kinds[node] == ARR)
+                    encoder.writeArray(args[node]);
+                else
+                    encoder.writeMap(args[node]);
+                for (int c = node + 1; c < aux[node]; c = end(c))
+                    encode(encoder, c);
+            }
+            case TAG -> {
+                encoder.writeTag(args[node]);
+                encode(encoder, node + 1);
+            }
+            case BOOL -> encoder.writeBool(args[node] != 0);
+            case NULL -> encoder.writeNull();
+            case UNDEFINED -> encoder.writeUndefined();
+            default -> encoder.writeSimple((byte) args[node]);
+        }
+    }
+
+    private static final class Builder {
+        private byte[] kinds = new byte[64];
+        private long[] args = new long[64];
+        private int[] aux = new int[64];
+        private int count;
+        private byte[] pool = new byte[256];
+        private int poolSize;
+
+        private int node(byte kind, long arg) {
+            if (count == kinds.length) {
+                int cap = count << 1;
+                kinds = Arrays.copyOf(kinds, cap);
+                args = Arrays.copyOf(args, cap);
+                aux = Arrays.copyOf(aux, cap);
+            }
+            kinds[count] = kind;
+            args[count] = arg;
+            return count++;
+        }
+
+        private void ensurePool(int extra) {
+            long min = (long) poolSize + extra;
+            if (min > Integer.MAX_VALUE - 8)
+                throw new OutOfMemoryError("CborCompactTree pool too large");
+            if (min > pool.length)
+                pool = Arrays.copyOf(pool, (int) Math.min(Math.max((long) pool.length << 1, min), Integer.MAX_VALUE - 8));
+        }
+
+        private void string(byte kind, byte @NotNull [] bytes) {
+            ensurePool(bytes.length);
+            int n = node(kind, poolSize);
+            System.arraycopy(bytes, 0, pool, poolSize, bytes.length);
+            poolSize += bytes.length;
+            aux[n] = bytes.length;
+        }
+
+        private void string(byte kind, @NotNull CborDecoder.ByteReader reader) {
+            int n = node(kind, poolSize);
+            int start = poolSize;
+            while (reader.hasNext()) {
+                ensurePool(Math.max(Math.min(reader.guessRemainingLength(), 1 << 20), 64));
+                poolSize += reader.next(pool, poolSize, pool.length - poolSize);
+            }
+            aux[n] = poolSize - start;
+        }
+
+        private void add(@NotNull CborValue value) {
+            switch (value) {
+                case CborValue.Unsigned v -> node(UNSIGNED, v.value);
+                case CborValue.Signed v -> node(SIGNED, v.value);
+                case CborValue.Float16 v -> node(FLOAT16, v.value);
+                case CborValue.Float32 v -> node(FLOAT32, Float.floatToRawIntBits(v.value));
+                case CborValue.Float64 v -> node(FLOAT64, Double.doubleToRawLongBits(v.value));
+                case CborValue.Str v -> string(STR, v.value.getBytes(StandardCharsets.UTF_8));
+                case CborValue.Bytes v -> string(BYTES, v.value);
+                case CborValue.Arr v -> {
+                    int n = node(ARR, v.value.size());
+                    for (var x : v.value)
+                        add(x);
+                    aux[n] = count;
+                }
+                case CborValue.Dict v -> {
+                    int n = node(DICT, v.value.size());
+                    for (var x : v.value.entrySet()) {
+                        add(x.getKey());
+                        add(x.getValue());
+                    }
+                    aux[n] = count;
+                }
+                case CborValue.Tag v -> {
+                    int n = node(TAG, v.tag);
+                    add(v.value);
+                    aux[n] = count;
+                }
+                case CborValue.Bool v -> node(BOOL, v.value ? 1 : 0);
+                case CborValue.Null ignored -> node(NULL, 0);
+                case CborValue.Undefined ignored -> node(UNDEFINED, 0);
+                case CborValue.Simple v -> node(SIMPLE, v.value);
+            }
+        }
+
+        private void read(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+            var type = decoder.peekTokenType();
+            switch (type) {
+                case UnsignedInteger -> node(UNSIGNED, decoder.readUInt());
+                case NegativeInteger -> node(SIGNED, decoder.readInt());
+                case SimpleValue -> node(SIMPLE, decoder.readSimple());
+                case False, True -> node(BOOL, decoder.readBool() ? 1 : 0);
+                case Null -> {
+                    decoder.readNull();
+                    node(NULL, 0);
+                }
+                case Undefined -> {
+                    decoder.readUndefined();
+                    node(UNDEFINED, 0);
+                }
+                case Float16 -> node(FLOAT16, decoder.readFloat16());
+                case Float32 -> node(FLOAT32, Float.floatToRawIntBits(decoder.readFloat32()));
+                case Float64 -> node(FLOAT64, Double.doubleToRawLongBits(decoder.readFloat64()));
+                case ByteString -> string(BYTES, decoder.readByteString());
+                case Text -> string(STR, decoder.readTextUtf8());
+                case Tag -> {
+                    int n = node(TAG, decoder.readTag());
+                    read(decoder);
+                    aux[n] = count;
+                }
+                case Array -> {
+                    int n = node(ARR, 0);
+                    long items = 0;
+                    int arr = decoder.enterArray();
+                    while (decoder.nextItem(arr)) {
+                        read(decoder);
+                        items++;
+                    }
+                    args[n] = items;
+                    aux[n] = count;
+                }
+                case Map -> {
+                    int n = node(DICT, 0);
+                    long pairs = 0;
+                    int map = decoder.enterMap();
+                    while (decoder.nextItem(map)) {
+                        read(decoder);
+                        read(decoder);
+                        pairs++;
+                    }
+                    args[n] = pairs;
+                    aux[n] = count;
+                }
+                case Break -> throw new UnexpectedCborException.Custom("expected value");
+                case null -> throw new UnexpectedCborException.Custom("expected value");
+            }
+        }
+    }
+
+    /**
+     * Decodes any CBOR item directly into a compact tree, and encodes a compact tree.
+     * @since 1.0.0-rc.4
+     */
+    public static final class Codec implements CborDeserializer<CborCompactTree>, CborSerializer<CborCompactTree> {
+        private Codec() {}
+
+        @Override
+        public CborCompactTree next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+            var b = new Builder();
+            b.read(decoder);
+            return new CborCompactTree(b);
+        }
+
+        @Override
+        public void encode(@NotNull CborEncoder encoder, @NotNull CborCompactTree value) throws IOException {
+            value.encode(encoder, value.root());
+        }
+    }
+
+    public static final Codec CODEC = new Codec();
+
+    @Override
+    public String toString() {
+        return toValue().toString();
+    }
+}
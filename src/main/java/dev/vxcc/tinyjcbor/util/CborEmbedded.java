@@ -0,0 +1,150 @@
+package dev.vxcc.tinyjcbor.util;
+
+import dev.vxcc.tinyjcbor.*;
+import dev.vxcc.tinyjcbor.serde.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Embedded CBOR ({@link CborTags#ENCODED_CBOR}): a byte string, that contains an encoded CBOR item.
+ * <p>{@link #CODEC} does not decode the embedded item, and does not copy it either:
+ * the handle is a view of the decoded buffer, so it is only valid as long as the buffer's contents are.
+ * Chunked byte strings are the exception, they are copied into a new buffer.
+ * <p>The embedded item can be decoded on demand with {@link #decoder()}, or written again with {@link #CODEC},
+ * which does not copy the bytes if the encoder writes into a {@link CborSegmentedOutput}.
+ * <br><br>
+ *
+ * Example:
+ * <pre><code>
+ *     var envelope = Cbor.decode(buffer, CborEmbedded.CODEC);
+ *     if (forward)
+ *         Cbor.encode(ByteOrder.BIG_ENDIAN, envelope, CborEmbedded.CODEC);
+ *     else
+ *         envelope.decode(PAYLOAD);
+ * </code></pre>
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborEmbedded {
+    @NotNull private final ByteBuffer bytes;
+
+    private CborEmbedded(@NotNull ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Wraps the remaining bytes of the buffer, without copying them. The buffer's position is not changed.
+     * @since 1.0.0-rc.4
+     */
+    public static @NotNull CborEmbedded of(@NotNull ByteBuffer encoded) {
+        return new CborEmbedded(encoded.slice().order(encoded.order()));
+    }
+
+    /**
+     * Wraps the array, without copying it.
+     * @since 1.0.0-rc.4
+     */
+    public static @NotNull CborEmbedded of(@NotNull ByteOrder byteOrder, byte @NotNull [] encoded) {
+        return new CborEmbedded(ByteBuffer.wrap(encoded).order(byteOrder));
+    }
+
+    /**
+     * Encodes the value, to embed it.
+     * @since 1.0.0-rc.4
+     */
+    public static <T> @NotNull CborEmbedded encode(@NotNull ByteOrder byteOrder, T value, @NotNull CborSerializer<T> encoder) {
+        return of(byteOrder, Cbor.encode(byteOrder, value, encoder));
+    }
+
+    /**
+     * @return number of bytes of the embedded item
+     * @since 1.0.0-rc.4
+     */
+    public int length() {
+        return bytes.remaining();
+    }
+
+    /**
+     * @return a new view of the embedded bytes, which must not be modified
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull ByteBuffer bytes() {
+        return bytes.duplicate().order(bytes.order());
+    }
+
+    /**
+     * @return a new decoder, reading the embedded item
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull CborDecoder decoder() {
+        return new CborDecoder(bytes());
+    }
+
+    /**
+     * Decodes the embedded item
+     * @throws UnexpectedCborException the embedded item does not match
+     * @throws InvalidCborException the embedded bytes are not valid CBOR
+     * @since 1.0.0-rc.4
+     */
+    public <T> T decode(@NotNull CborDeserializer<T> decoder) throws UnexpectedCborException {
+        return decoder().read(decoder);
+    }
+
+    /**
+     * Writes the embedded item verbatim, without the tag and byte string around it.
+     * <p>The embedded item has to have the byte order of the encoder.
+     * @throws IOException when writing to the {@code OutputStream} fails
+     * @since 1.0.0-rc.4
+     */
+    public void writeUnwrapped(@NotNull CborEncoder encoder) throws IOException {
+        encoder.writeEncoded(bytes());
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        return o instanceof CborEmbedded e && bytes.equals(e.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return bytes.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "CborEmbedded(" + length() + " bytes)";
+    }
+
+    private static @NotNull CborEmbedded read(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+        var reader = decoder.readByteString();
+        var slice = reader.slice();
+        if (slice == null)
+            slice = ByteBuffer.wrap(reader.readAll());
+        return new CborEmbedded(slice);
+    }
+
+    /**
+     * The byte string inside the tag, for use with {@link dev.vxcc.tinyjcbor.serde.CborTagRegistry}
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull CborEmbedded> CONTENT = new CborSerDe<>(
+            new CborPrim.PrimitiveDecoder<@NotNull CborEmbedded>(new CborType[]{ CborType.ByteString }) {
+                @Override
+                public CborEmbedded next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+                    return read(decoder);
+                }
+            },
+            (encoder, value) -> encoder.writeByteString(value.bytes()));
+
+    /**
+     * Reads and writes the tagged byte string, without decoding or copying the embedded item.
+     * @since 1.0.0-rc.4
+     */
+    public static final CborSerDe<@NotNull CborEmbedded> CODEC = new CborSerDe<>(
+            new CborFixedTagDecoder<>(CborTags.ENCODED_CBOR, CONTENT),
+            new CborFixedTagEncoder<>(CborTags.ENCODED_CBOR, CONTENT));
+}
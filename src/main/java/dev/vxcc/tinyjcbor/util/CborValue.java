@@ -4,7 +4,9 @@ import dev.vxcc.tinyjcbor.*;
 import dev.vxcc.tinyjcbor.serde.CborDeserializer;
 import dev.vxcc.tinyjcbor.serde.CborPrim;
 import dev.vxcc.tinyjcbor.serde.CborSerializer;
+import dev.vxcc.tinyjcbor.serde.CborTagRegistry;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -29,16 +31,13 @@ public sealed abstract class CborValue {
 
     /**
      * Converts this value into a decoder, so it can be deserialized.
-     * <p>This is currently inefficient!
+     * <p>The decoder directly walks this value, without encoding it first.
      *
+     * @see CborDecoder#CborDecoder(CborValue)
      * @since 1.0.0-rc.3
      */
     public final CborDecoder asDecoder() {
-        var order = ByteOrder.BIG_ENDIAN;
-        var arr = Cbor.encode(order, this, CODEC);
-        var buf = ByteBuffer.wrap(arr);
-        buf.order(order);
-        return new CborDecoder(buf);
+        return new CborDecoder(this);
     }
 
     public static final class Unsigned extends CborValue {
@@ -223,6 +222,7 @@ public sealed abstract class CborValue {
 
     public static final class Bytes extends CborValue {
         public final byte[] value;
+        private int hash;
 
         public Bytes(byte[] value) {
             this.value = value;
@@ -233,9 +233,13 @@ public sealed abstract class CborValue {
             return HexFormat.of().formatHex(value);
         }
 
+        /** Memoized, so the array must not be modified after this has been called */
         @Override
         public int hashCode() {
-            return Arrays.hashCode(value);
+            int h = hash;
+            if (h == 0)
+                hash = h = Arrays.hashCode(value);
+            return h;
         }
 
         @Override
@@ -253,6 +257,7 @@ public sealed abstract class CborValue {
 
     public static final class Arr extends CborValue {
         public final List<CborValue> value;
+        private int hash;
 
         public Arr(List<CborValue> value) {
             this.value = value;
@@ -263,9 +268,13 @@ public sealed abstract class CborValue {
             return value.toString();
         }
 
+        /** Memoized, so the contents must not be modified after this has been called */
         @Override
         public int hashCode() {
-            return value.hashCode();
+            int h = hash;
+            if (h == 0)
+                hash = h = value.hashCode();
+            return h;
         }
 
         @Override
@@ -283,6 +292,7 @@ public sealed abstract class CborValue {
 
     public static final class Dict extends CborValue {
         public final Map<CborValue, CborValue> value;
+        private int hash;
 
         public Dict(Map<CborValue, CborValue> value) {
             this.value = value;
@@ -293,9 +303,13 @@ public sealed abstract class CborValue {
             return value.toString();
         }
 
+        /** Memoized, so the contents must not be modified after this has been called */
         @Override
         public int hashCode() {
-            return value.hashCode();
+            int h = hash;
+            if (h == 0)
+                hash = h = value.hashCode();
+            return h;
         }
 
         @Override
@@ -314,10 +328,28 @@ public sealed abstract class CborValue {
     public static final class Tag extends CborValue {
         public final long tag;
         public final CborValue value;
+        /**
+         * The content converted to a domain object by the handler of a {@link CborTagRegistry}, or {@code null}.
+         * Not part of equality, since it is derived from {@link #value}.
+         *
+         * @see CborValue#codec(CborTagRegistry)
+         * @since 1.0.0-rc.4
+         */
+        @Nullable public final Object decoded;
+        private int hash;
 
         public Tag(long tag, CborValue value) {
+            this(tag, value, null);
+        }
+
+        /**
+         * @param decoded the content converted to a domain object
+         * @since 1.0.0-rc.4
+         */
+        public Tag(long tag, CborValue value, @Nullable Object decoded) {
             this.tag = tag;
             this.value = value;
+            this.decoded = decoded;
         }
 
         @Override
@@ -327,7 +359,10 @@ public sealed abstract class CborValue {
 
         @Override
         public int hashCode() {
-            return Long.hashCode(tag) ^ value.hashCode();
+            int h = hash;
+            if (h == 0)
+                hash = h = Long.hashCode(tag) ^ value.hashCode();
+            return h;
         }
 
         @Override
@@ -459,7 +494,11 @@ public sealed abstract class CborValue {
     }
 
     public static final class Codec implements CborDeserializer<CborValue>, CborSerializer<CborValue> {
-        private Codec() {}
+        @Nullable private final CborTagRegistry registry;
+
+        private Codec(@Nullable CborTagRegistry registry) {
+            this.registry = registry;
+        }
 
         @Override
         public CborValue next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
@@ -468,8 +507,14 @@ public sealed abstract class CborValue {
                 case NegativeInteger -> new Signed(decoder.readInt());
                 case SimpleValue -> new Simple(decoder.readSimple());
                 case False, True -> new Bool(decoder.readBool());
-                case Null -> Null.VALUE;
-                case Undefined -> Undefined.VALUE;
+                case Null -> {
+                    decoder.readNull();
+                    yield Null.VALUE;
+                }
+                case Undefined -> {
+                    decoder.readUndefined();
+                    yield Undefined.VALUE;
+                }
                 case Float16 -> new Float16(decoder.readFloat16());
                 case Float32 -> new Float32(decoder.readFloat32());
                 case Float64 -> new Float64(decoder.readFloat64());
@@ -477,26 +522,24 @@ public sealed abstract class CborValue {
                 case Text -> new Str(decoder.read(CborPrim.STRING));
                 case Tag -> {
                     var tag = decoder.readTag();
-                    yield new Tag(tag, next(decoder));
+                    var content = next(decoder);
+                    var entry = registry != null ? registry.get(tag) : null;
+                    if (entry != null)
+                        yield new Tag(tag, content, entry.content.next(content.asDecoder()));
+                    yield new Tag(tag, content);
                 }
                 case Array -> {
                     var out = new ArrayList<CborValue>();
-                    var arr = decoder.readArrayManual();
-                    while (arr.hasNext()) {
-                        arr.next();
+                    int arr = decoder.enterArray();
+                    while (decoder.nextItem(arr))
                         out.add(next(decoder));
-                    }
                     yield new Arr(out);
                 }
                 case Map -> {
-                    var out = new HashMap<CborValue, CborValue>();
-                    var arr = decoder.readArrayManual();
-                    while (arr.hasNext()) {
-                        arr.next();
-                        var k = next(decoder);
-                        var v = next(decoder);
-                        out.put(k, v);
-                    }
+                    var out = new CborValueMap();
+                    int map = decoder.enterMap();
+                    while (decoder.nextItem(map))
+                        out.put(next(decoder), next(decoder));
                     yield new Dict(out);
                 }
                 case Break -> throw new UnexpectedCborException.Custom("expected value");
@@ -508,19 +551,24 @@ public sealed abstract class CborValue {
         public void encode(@NotNull CborEncoder encoder, CborValue value) throws IOException {
             switch (value) {
                 case Arr arr -> {
-                    var w = encoder.writeArray();
+                    encoder.writeArray(arr.value.size());
                     for (var x : arr.value) {
                         encode(encoder, x);
                     }
-                    w.end();
                 }
                 case Dict dict -> {
-                    var w = encoder.writeArray();
-                    for (var x : dict.value.entrySet()) {
-                        encode(encoder, x.getKey());
-                        encode(encoder, x.getValue());
+                    encoder.writeMap(dict.value.size());
+                    if (dict.value instanceof CborValueMap map) {
+                        for (int i = 0; i < map.size(); i++) {
+                            encode(encoder, map.keyAt(i));
+                            encode(encoder, map.valueAt(i));
+                        }
+                    } else {
+                        for (var x : dict.value.entrySet()) {
+                            encode(encoder, x.getKey());
+                            encode(encoder, x.getValue());
+                        }
                     }
-                    w.end();
                 }
                 case Bytes bytes -> encoder.writeByteString(bytes.value);
                 case Float16 n -> encoder.writeFloat16(n.value);
@@ -541,5 +589,14 @@ public sealed abstract class CborValue {
         }
     }
 
-    public static final Codec CODEC = new Codec();
+    public static final Codec CODEC = new Codec(null);
+
+    /**
+     * Codec that additionally converts the content of tags registered in {@code registry} with their handler,
+     * into {@link Tag#decoded}. The handler reads the already decoded content, the bytes are only read once.
+     * @since 1.0.0-rc.4
+     */
+    public static @NotNull Codec codec(@NotNull CborTagRegistry registry) {
+        return new Codec(registry);
+    }
 }
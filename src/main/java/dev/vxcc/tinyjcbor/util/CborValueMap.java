@@ -0,0 +1,290 @@
+package dev.vxcc.tinyjcbor.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Insertion-ordered map of CBOR values, used as backing store of {@link CborValue.Dict} by {@link CborValue#CODEC}.
+ * <p>Keys and values are stored in parallel arrays, with the hash codes of the keys cached next to them.
+ * Maps with up to 8 entries are searched linearly, larger maps additionally get an open-addressing index,
+ * so there is no entry object per pair.
+ * <p>Entries can be iterated without allocations via {@link #keyAt(int)} and {@link #valueAt(int)}.
+ * <p>Does not permit {@code null} keys. Not thread safe.
+ *
+ * @since 1.0.0-rc.4
+ */
+public final class CborValueMap extends AbstractMap<CborValue, CborValue> {
+    private static final int LINEAR_MAX = 8;
+
+    private CborValue @NotNull [] keys;
+    private CborValue @NotNull [] vals;
+    private int @NotNull [] hashes;
+    private int size;
+    /** index+1 of the entry in each slot, or 0 if empty. {@code null} while the map is small */
+    private int @Nullable [] table;
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public CborValueMap() {
+        this(4);
+    }
+
+    /**
+     * @since 1.0.0-rc.4
+     */
+    public CborValueMap(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException();
+        int cap = Math.max(expectedSize, 1);
+        keys = new CborValue[cap];
+        vals = new CborValue[cap];
+        hashes = new int[cap];
+        if (expectedSize > LINEAR_MAX)
+            table = new int[tableSize(expectedSize)];
+    }
+
+    private static int tableSize(int entries) {
+        return Integer.highestOneBit(Math.max(entries, 4) * 2 - 1) << 1;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(@NotNull Object key, int hash) {
+        if (table == null) {
+            for (int i = 0; i < size; i++)
+                if (hashes[i] == hash && key.equals(keys[i]))
+                    return i;
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int e = table[slot];
+            if (e == 0)
+                return -1;
+            int i = e - 1;
+            if (hashes[i] == hash && key.equals(keys[i]))
+                return i;
+        }
+    }
+
+    private void insertIntoTable(int i) {
+        int mask = table.length - 1;
+        int slot = spread(hashes[i]) & mask;
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+        table[slot] = i + 1;
+    }
+
+    private void rebuildTable() {
+        table = new int[tableSize(size)];
+        for (int i = 0; i < size; i++)
+            insertIntoTable(i);
+    }
+
+    /** after entries moved, reuses the table, which is still large enough */
+    private void refillTable() {
+        if (table == null)
+            return;
+        Arrays.fill(table, 0);
+        for (int i = 0; i < size; i++)
+            insertIntoTable(i);
+    }
+
+    /**
+     * @return the key of the entry at the given index in insertion order
+     * @since 1.0.0-rc.4
+     */
+    public @NotNull CborValue keyAt(int index) {
+        Objects.checkIndex(index, size);
+        return keys[index];
+    }
+
+    /**
+     * @return the value of the entry at the given index in insertion order
+     * @since 1.0.0-rc.4
+     */
+    public CborValue valueAt(int index) {
+        Objects.checkIndex(index, size);
+        return vals[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && indexOf(key, key.hashCode()) >= 0;
+    }
+
+    @Override
+    public CborValue get(Object key) {
+        if (key == null)
+            return null;
+        int i = indexOf(key, key.hashCode());
+        return i < 0 ? null : vals[i];
+    }
+
+    @Override
+    public CborValue put(@NotNull CborValue key, CborValue value) {
+        int hash = key.hashCode();
+        int i = indexOf(key, hash);
+        if (i >= 0) {
+            var old = vals[i];
+            vals[i] = value;
+            return old;
+        }
+        if (size == keys.length) {
+            int cap = size << 1;
+            keys = Arrays.copyOf(keys, cap);
+            vals = Arrays.copyOf(vals, cap);
+            hashes = Arrays.copyOf(hashes, cap);
+        }
+        i = size++;
+        keys[i] = key;
+        vals[i] = value;
+        hashes[i] = hash;
+        if (table != null) {
+            if (size * 2 <= table.length)
+                insertIntoTable(i);
+            else
+                rebuildTable();
+        } else if (size > LINEAR_MAX) {
+            rebuildTable();
+        }
+        return null;
+    }
+
+    @Override
+    public CborValue remove(Object key) {
+        if (key == null)
+            return null;
+        int i = indexOf(key, key.hashCode());
+        if (i < 0)
+            return null;
+        var old = vals[i];
+        removeAt(i);
+        return old;
+    }
+
+    private void removeAt(int i) {
+        int tail = size - i - 1;
+        System.arraycopy(keys, i + 1, keys, i, tail);
+        System.arraycopy(vals, i + 1, vals, i, tail);
+        System.arraycopy(hashes, i + 1, hashes, i, tail);
+        size--;
+        keys[size] = null;
+        vals[size] = null;
+        refillTable();
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(vals, 0, size, null);
+        size = 0;
+        if (table != null)
+            Arrays.fill(table, 0);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int i = 0; i < size; i++)
+            h += hashes[i] ^ Objects.hashCode(vals[i]);
+        return h;
+    }
+
+    @Override
+    public @NotNull Set<Entry<CborValue, CborValue>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public @NotNull Iterator<Entry<CborValue, CborValue>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                CborValueMap.this.clear();
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Entry<CborValue, CborValue>> {
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<CborValue, CborValue> next() {
+            if (next >= size)
+                throw new NoSuchElementException();
+            last = next;
+            return new IndexEntry(next++);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0)
+                throw new IllegalStateException();
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    private final class IndexEntry implements Entry<CborValue, CborValue> {
+        private final int index;
+
+        private IndexEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public CborValue getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public CborValue getValue() {
+            return vals[index];
+        }
+
+        @Override
+        public CborValue setValue(CborValue value) {
+            var old = vals[index];
+            vals[index] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry<?, ?> e && Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return hashes[index] ^ Objects.hashCode(vals[index]);
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
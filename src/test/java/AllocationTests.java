@@ -0,0 +1,260 @@
+import dev.vxcc.tinyjcbor.CborDecoder;
+import dev.vxcc.tinyjcbor.CborEncoder;
+import dev.vxcc.tinyjcbor.CborOutputBuffer;
+import dev.vxcc.tinyjcbor.CborToken;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the hot paths of a reused decoder or encoder do not allocate.
+ * <p>Every operation is run until it is compiled, and then the bytes allocated by this thread are measured over many runs.
+ * The total has to stay below a small slack, for allocations of the measurement itself, which is much less than one
+ * object per run.
+ */
+public class AllocationTests {
+    private static final int WARMUP = 20_000;
+    private static final int RUNS = 100_000;
+    private static final long SLACK = 1024;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeAll
+    static void setup() {
+        Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    interface Op {
+        void run() throws IOException;
+    }
+
+    /** @return bytes allocated by all runs together */
+    private static long allocated(Op op) {
+        try {
+            for (int i = 0; i < WARMUP; i++)
+                op.run();
+            long thread = Thread.currentThread().threadId();
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < RUNS; i++)
+                op.run();
+            long after = threads.getThreadAllocatedBytes(thread);
+            return after - before;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void assertNoAllocation(Op op) {
+        long bytes = allocated(op);
+        assertTrue(bytes <= SLACK, () -> bytes + " bytes allocated by " + RUNS + " runs");
+    }
+
+    private final CborOutputBuffer out = new CborOutputBuffer();
+    private final CborEncoder encoder = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+    private final CborDecoder decoder = new CborDecoder(ByteBuffer.allocate(0));
+    private long sink;
+
+    private ByteBuffer encode(Op body) throws IOException {
+        out.reset();
+        body.run();
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    @Test
+    public void readInts() throws IOException {
+        var buf = encode(() -> {
+            encoder.writeArray(6);
+            encoder.writeUnsigned(1);
+            encoder.writeUnsigned(200);
+            encoder.writeUnsigned(70000);
+            encoder.writeUnsigned(1L << 40);
+            encoder.writeSigned(-5);
+            encoder.writeSigned(Long.MIN_VALUE);
+        });
+        assertNoAllocation(() -> {
+            decoder.reset(buf.rewind());
+            long n = decoder.readArrayRaw();
+            for (long i = 0; i < n; i++)
+                sink += decoder.readInt();
+        });
+    }
+
+    @Test
+    public void readFloats() throws IOException {
+        var buf = encode(() -> {
+            encoder.writeFloat16((short) 0x3c00);
+            encoder.writeFloat32(1.5f);
+            encoder.writeFloat64(2.25);
+        });
+        assertNoAllocation(() -> {
+            decoder.reset(buf.rewind());
+            sink += decoder.readFloat16();
+            sink += (long) decoder.readFloat32();
+            sink += (long) decoder.readFloat64();
+        });
+    }
+
+    @Test
+    public void readHeads() throws IOException {
+        var buf = encode(() -> {
+            encoder.writeMap(2);
+            encoder.writeTag(1);
+            encoder.writeUnsigned(7);
+            encoder.writeBool(true);
+            encoder.writeNull();
+            encoder.writeArray(0);
+        });
+        assertNoAllocation(() -> {
+            decoder.reset(buf.rewind());
+            while (decoder.hasNext()) {
+                int kind = decoder.next();
+                sink += kind + decoder.tokenArg();
+            }
+        });
+    }
+
+    @Test
+    public void readNestedContainers() throws IOException {
+        var buf = encode(() -> {
+            encoder.writeArray(3);
+            for (int i = 0; i < 3; i++) {
+                encoder.writeMap(2);
+                encoder.writeUnsigned(1);
+                encoder.writeArray(2);
+                encoder.writeUnsigned(i);
+                encoder.writeUnsigned(i);
+                encoder.writeUnsigned(2);
+                var arr = encoder.writeArray();
+                encoder.writeUnsigned(i);
+                arr.end();
+            }
+        });
+        assertNoAllocation(() -> {
+            decoder.reset(buf.rewind());
+            int outer = decoder.enterArray();
+            while (decoder.nextItem(outer)) {
+                int map = decoder.enterMap();
+                while (decoder.nextItem(map)) {
+                    sink += decoder.readUInt();
+                    int inner = decoder.enterArray();
+                    while (decoder.nextItem(inner))
+                        sink += decoder.readUInt();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void readPresizedStrings() throws IOException {
+        var text = "grüße".getBytes(StandardCharsets.UTF_8);
+        var bytes = new byte[100];
+        var buf = encode(() -> {
+            encoder.writeTextUtf8(text);
+            encoder.writeByteString(bytes);
+        });
+        var dst = new byte[100];
+        assertNoAllocation(() -> {
+            decoder.reset(buf.rewind());
+            var textReader = decoder.readTextUtf8();
+            sink += textReader.next(dst, 0, (int) textReader.remainingLength());
+            var bytesReader = decoder.readByteString();
+            sink += bytesReader.next(dst, 0, (int) bytesReader.remainingLength());
+        });
+    }
+
+    @Test
+    public void readStringViews() throws IOException {
+        var buf = encode(() -> {
+            encoder.writeText("hello");
+            encoder.writeByteString(new byte[64]);
+        });
+        assertNoAllocation(() -> {
+            decoder.reset(buf.rewind());
+            while (decoder.hasNext()) {
+                int kind = decoder.next();
+                if (kind == CborToken.TEXT || kind == CborToken.BYTE_STRING)
+                    sink += decoder.tokenContent().remaining();
+            }
+        });
+    }
+
+    @Test
+    public void readStringViewsOfNewBuffers() throws IOException {
+        var messages = new ByteBuffer[16];
+        for (int m = 0; m < messages.length; m++) {
+            int first = m;
+            messages[m] = encode(() -> {
+                for (int i = 0; i < 8; i++)
+                    encoder.writeByteString(new byte[] { (byte) first, (byte) i });
+            });
+        }
+        var run = new int[1];
+        long bytes = allocated(() -> {
+            int m = run[0]++ % messages.length;
+            decoder.reset(messages[m].rewind());
+            for (int i = 0; i < 8; i++) {
+                decoder.next();
+                var view = decoder.tokenContent();
+                assertEquals(m, view.get(view.position()));
+                assertEquals(i, view.get(view.position() + 1));
+            }
+        });
+        /* a view can only be kept for the same buffer, so there is at most one view per message, not one per string */
+        assertTrue(bytes <= (long) RUNS * 128 + SLACK, () -> bytes + " bytes allocated by " + RUNS + " runs");
+    }
+
+    @Test
+    public void writeScalars() {
+        assertNoAllocation(() -> {
+            out.reset();
+            encoder.writeUnsigned(1);
+            encoder.writeUnsigned(1L << 40);
+            encoder.writeSigned(-70000);
+            encoder.writeFloat16((short) 0x3c00);
+            encoder.writeFloat32(1.5f);
+            encoder.writeFloat64(2.25);
+            encoder.writeBool(false);
+            encoder.writeNull();
+            encoder.writeTag(1);
+            encoder.writeUnsigned(0);
+        });
+    }
+
+    @Test
+    public void writeContainers() {
+        assertNoAllocation(() -> {
+            out.reset();
+            encoder.writeArray(2);
+            encoder.writeMap(1);
+            encoder.writeUnsigned(1);
+            encoder.writeUnsigned(2);
+            encoder.beginArray();
+            encoder.writeUnsigned(3);
+            encoder.endArray();
+        });
+    }
+
+    @Test
+    public void writePresizedStrings() {
+        var text = "grüße".getBytes(StandardCharsets.UTF_8);
+        var bytes = new byte[100];
+        assertNoAllocation(() -> {
+            out.reset();
+            encoder.writeTextUtf8(text);
+            encoder.writeByteString(bytes);
+            encoder.writeByteString(bytes, 10, 20);
+        });
+    }
+}
@@ -0,0 +1,236 @@
+import dev.vxcc.tinyjcbor.Cbor;
+import dev.vxcc.tinyjcbor.CborEncoder;
+import dev.vxcc.tinyjcbor.CborType;
+import dev.vxcc.tinyjcbor.UnexpectedCborException;
+import dev.vxcc.tinyjcbor.serde.*;
+import dev.vxcc.tinyjcbor.util.CborCompactTree;
+import dev.vxcc.tinyjcbor.util.CborValue;
+import dev.vxcc.tinyjcbor.util.CborValueMap;
+import dev.vxcc.tinyjcbor.util.MapConstructor;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CborValueTests {
+    private static CborValue sample() {
+        var user = new HashMap<CborValue, CborValue>();
+        user.put(new CborValue.Str("name"), new CborValue.Str("Max"));
+        user.put(new CborValue.Str("id"), new CborValue.Unsigned(300));
+        user.put(new CborValue.Str("key"), new CborValue.Bytes(new byte[]{ 1, 2, 3 }));
+        var root = new HashMap<CborValue, CborValue>();
+        root.put(new CborValue.Str("users"), new CborValue.Arr(List.of(
+                new CborValue.Dict(user),
+                new CborValue.Tag(1, new CborValue.Signed(-5)),
+                new CborValue.Float64(1.5),
+                CborValue.Null.VALUE,
+                CborValue.Bool.TRUE)));
+        return new CborValue.Dict(root);
+    }
+
+    @Test
+    public void compactTreeFromValue() {
+        var value = sample();
+        var tree = CborCompactTree.of(value);
+        assertEquals(value, tree.toValue());
+
+        int users = tree.get(tree.root(), "users");
+        assertEquals(CborType.Array, tree.type(users));
+        assertEquals(5, tree.size(users));
+        int user = tree.firstChild(users);
+        assertEquals("Max", tree.text(tree.get(user, "name")));
+        assertEquals(300, tree.integer(tree.get(user, "id")));
+        assertEquals(-1, tree.get(user, "missing"));
+        assertEquals(ByteBuffer.wrap(new byte[]{ 1, 2, 3 }), tree.bytes(tree.get(user, "key")));
+
+        int tag = tree.nextSibling(users, user);
+        assertEquals(1, tree.tag(tag));
+        assertEquals(-5, tree.integer(tree.firstChild(tag)));
+        assertEquals(1.5, tree.float64(tree.get(users, 2)));
+        assertEquals(CborType.Null, tree.type(tree.get(users, 3)));
+        assertTrue(tree.bool(tree.get(users, 4)));
+        assertEquals(-1, tree.nextSibling(users, tree.get(users, 4)));
+    }
+
+    @Test
+    public void compactTreeRecode() throws IOException {
+        var out = new ByteArrayOutputStream();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        enc.writeMap(2);
+        enc.writeText("a");
+        var arr = enc.writeArray();
+        enc.writeUnsigned(1);
+        var str = enc.writeChunkedText();
+        str.writeChunk("hello ");
+        str.writeChunk("world");
+        str.end();
+        enc.writeArray(0);
+        arr.end();
+        enc.writeText("b");
+        enc.writeFloat32(2.5f);
+
+        var tree = Cbor.decode(ByteBuffer.wrap(out.toByteArray()), CborCompactTree.CODEC);
+        int a = tree.get(tree.root(), "a");
+        assertEquals(3, tree.size(a));
+        assertEquals("hello world", tree.text(tree.get(a, 1)));
+        assertEquals(0, tree.size(tree.get(a, 2)));
+        assertEquals(-1, tree.firstChild(tree.get(a, 2)));
+        assertEquals(2.5f, tree.float32(tree.get(tree.root(), "b")));
+
+        var recoded = Cbor.encode(ByteOrder.BIG_ENDIAN, tree, CborCompactTree.CODEC);
+        var tree2 = Cbor.decode(ByteBuffer.wrap(recoded), CborCompactTree.CODEC);
+        assertEquals(tree.toValue(), tree2.toValue());
+        assertEquals(tree.nodeCount(), tree2.nodeCount());
+    }
+
+    @Test
+    public void bindValueDirectly() {
+        var value = sample();
+        var user = new CborMapDecoder<>(MapConstructor.map(HashMap::new), CborPrim.STRING, new CborVariantDecoder<>(List.of(
+                new LessInfoDecoder<>(CborPrim.UNSIGNED),
+                new LessInfoDecoder<>(CborPrim.BYTES),
+                new LessInfoDecoder<>(CborPrim.STRING))));
+        var item = new CborVariantDecoder<>(List.of(
+                new LessInfoDecoder<>(CborPrim.DOUBLE),
+                new LessInfoDecoder<>(new CborFixedTagDecoder<>(1, CborPrim.SIGNED)),
+                new LessInfoDecoder<>(user),
+                new LessInfoDecoder<>(CborPrim.NULL),
+                new LessInfoDecoder<>(CborPrim.BOOL)));
+        var root = new CborMapDecoder<>(MapConstructor.map(HashMap::new), CborPrim.STRING,
+                new CborArrayDecoder<>(Collectors.toList(), item));
+
+        var decoder = value.asDecoder();
+        var decoded = decoder.read(root);
+        assertFalse(decoder.hasNext());
+
+        var users = decoded.get("users");
+        assertEquals(5, users.size());
+        var first = assertInstanceOf(HashMap.class, users.get(0));
+        assertEquals("Max", first.get("name"));
+        assertEquals(300L, first.get("id"));
+        assertArrayEquals(new byte[]{ 1, 2, 3 }, (byte[]) first.get("key"));
+        assertEquals(-5L, users.get(1));
+        assertEquals(1.5, users.get(2));
+        assertNull(users.get(3));
+        assertEquals(true, users.get(4));
+
+        var skip = value.asDecoder();
+        skip.readAny();
+        assertFalse(skip.hasNext());
+    }
+
+    @Test
+    public void valueMap() {
+        var map = new CborValueMap();
+        var ref = new HashMap<CborValue, CborValue>();
+        for (int i = 0; i < 40; i++) {
+            map.put(new CborValue.Unsigned(i), new CborValue.Str("v" + i));
+            ref.put(new CborValue.Unsigned(i), new CborValue.Str("v" + i));
+        }
+        assertEquals(ref, map);
+        assertEquals(map, ref);
+        assertEquals(ref.hashCode(), map.hashCode());
+        assertEquals(new CborValue.Str("v17"), map.get(new CborValue.Unsigned(17)));
+        assertNull(map.get(new CborValue.Unsigned(40)));
+
+        for (int i = 0; i < 40; i += 2)
+            assertEquals(new CborValue.Str("v" + i), map.remove(new CborValue.Unsigned(i)));
+        assertEquals(20, map.size());
+        for (int i = 0; i < 20; i++)
+            assertEquals(new CborValue.Unsigned(i * 2 + 1), map.keyAt(i));
+        assertEquals(new CborValue.Str("v39"), map.get(new CborValue.Unsigned(39)));
+        assertFalse(map.containsKey(new CborValue.Unsigned(38)));
+
+        map.entrySet().removeIf(e -> ((CborValue.Unsigned) e.getKey()).value > 5);
+        assertEquals(3, map.size());
+        assertEquals(new CborValue.Str("v5"), map.get(new CborValue.Unsigned(5)));
+        map.put(new CborValue.Unsigned(1), CborValue.Null.VALUE);
+        assertEquals(CborValue.Null.VALUE, map.valueAt(0));
+    }
+
+    @Test
+    public void valueMapRemoveAndAddAgain() {
+        var map = new CborValueMap();
+        for (int i = 0; i < 10; i++)
+            map.put(new CborValue.Unsigned(i), new CborValue.Unsigned(i));
+        for (int i = 2; i < 10; i++)
+            map.remove(new CborValue.Unsigned(i));
+        for (int i = 2; i < 7; i++)
+            map.put(new CborValue.Unsigned(i), new CborValue.Unsigned(i));
+        assertEquals(7, map.size());
+        assertEquals(new CborValue.Unsigned(5), map.get(new CborValue.Unsigned(5)));
+        assertTrue(map.containsKey(new CborValue.Unsigned(6)));
+        map.put(new CborValue.Unsigned(6), new CborValue.Unsigned(99));
+        assertEquals(7, map.size());
+        assertEquals(new CborValue.Unsigned(99), map.get(new CborValue.Unsigned(6)));
+
+        for (int i = 7; i < 30; i++)
+            map.put(new CborValue.Unsigned(i), new CborValue.Unsigned(i));
+        for (int i = 0; i < 30; i++)
+            assertTrue(map.containsKey(new CborValue.Unsigned(i)));
+    }
+
+    @Test
+    public void codecRoundTrip() {
+        var value = sample();
+        var bytes = Cbor.encode(ByteOrder.BIG_ENDIAN, value, CborValue.CODEC);
+        var decoded = Cbor.decode(ByteBuffer.wrap(bytes), CborValue.CODEC);
+        assertEquals(value, decoded);
+        assertInstanceOf(CborValueMap.class, ((CborValue.Dict) decoded).value);
+        assertArrayEquals(bytes, Cbor.encode(ByteOrder.BIG_ENDIAN, decoded, CborValue.CODEC));
+
+        assertEquals(value, CborValue.CODEC.next(decoded.asDecoder()));
+        var nested = new CborValue.Arr(List.of(value, decoded));
+        assertEquals(nested, CborValue.CODEC.next(nested.asDecoder()));
+    }
+
+    record Point(long x, long y) {}
+
+    @Test
+    public void tagRegistry() {
+        var point = new CborSerDe<>(
+                CborDeserializer.map(new CborArrayDecoder<>(Collectors.toList(), CborPrim.UNSIGNED), l -> new Point(l.get(0), l.get(1))),
+                (CborSerializer<Point>) (out, p) -> {
+                    out.writeArray(2);
+                    out.writeUnsigned(p.x());
+                    out.writeUnsigned(p.y());
+                });
+        var registry = new CborTagRegistry()
+                .register(40, Point.class, point)
+                .register(100000, String.class, CborPrim.STRING);
+
+        var value = new CborValue.Arr(List.of(
+                new CborValue.Tag(40, new CborValue.Arr(List.of(new CborValue.Unsigned(1), new CborValue.Unsigned(2)))),
+                new CborValue.Tag(100000, new CborValue.Str("hi")),
+                new CborValue.Tag(41, CborValue.Null.VALUE)));
+        var bytes = Cbor.encode(ByteOrder.BIG_ENDIAN, value, CborValue.CODEC);
+
+        var decoded = (CborValue.Arr) Cbor.decode(ByteBuffer.wrap(bytes), CborValue.codec(registry));
+        assertEquals(new Point(1, 2), assertInstanceOf(CborValue.Tag.class, decoded.value.get(0)).decoded);
+        assertEquals("hi", assertInstanceOf(CborValue.Tag.class, decoded.value.get(1)).decoded);
+        assertNull(assertInstanceOf(CborValue.Tag.class, decoded.value.get(2)).decoded);
+        assertEquals(value, decoded);
+        assertArrayEquals(bytes, Cbor.encode(ByteOrder.BIG_ENDIAN, decoded, CborValue.CODEC));
+        assertEquals(value, CborValue.CODEC.next(decoded.asDecoder()));
+
+        var typed = Cbor.decode(ByteBuffer.wrap(bytes), new CborArrayDecoder<>(Collectors.toList(), new CborVariantDecoder<>(List.of(
+                registry.decoder(Point.class),
+                registry.decoder(String.class),
+                new CborFixedTagDecoder<>(41, CborPrim.NULL)))));
+        assertEquals(Arrays.asList(new Point(1, 2), "hi", null), typed);
+
+        assertArrayEquals(Cbor.encode(ByteOrder.BIG_ENDIAN, value.value.get(0), CborValue.CODEC),
+                Cbor.encode(ByteOrder.BIG_ENDIAN, new Point(1, 2), registry));
+        assertThrows(IllegalArgumentException.class, () -> Cbor.encode(ByteOrder.BIG_ENDIAN, 1L, registry));
+        assertThrows(UnexpectedCborException.WrongTag.class,
+                () -> Cbor.decode(ByteBuffer.wrap(new byte[]{ (byte) 0xd8, 41, (byte) 0xf6 }), registry));
+    }
+}
@@ -1,14 +1,50 @@
 import dev.vxcc.tinyjcbor.Cbor;
+import dev.vxcc.tinyjcbor.CborDecoder;
+import dev.vxcc.tinyjcbor.CborEncoder;
+import dev.vxcc.tinyjcbor.CborFrameReader;
+import dev.vxcc.tinyjcbor.CborFrameWriter;
+import dev.vxcc.tinyjcbor.CborMetrics;
+import dev.vxcc.tinyjcbor.CborOutputBuffer;
+import dev.vxcc.tinyjcbor.CborPublisher;
 import dev.vxcc.tinyjcbor.CborSeq;
+import dev.vxcc.tinyjcbor.CborToken;
+import dev.vxcc.tinyjcbor.CborType;
+import dev.vxcc.tinyjcbor.CborVisitor;
+import dev.vxcc.tinyjcbor.InvalidCborException;
+import dev.vxcc.tinyjcbor.UnexpectedCborException;
 import dev.vxcc.tinyjcbor.serde.*;
+import dev.vxcc.tinyjcbor.util.CborValue;
 import dev.vxcc.tinyjcbor.util.MapConstructor;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -275,4 +311,550 @@ public class DecodeTests {
     }
 
     // TODO: test tagged decoder
+
+    @SuppressWarnings("unchecked")
+    private static CborVariantDecoder<Object> makeRecursiveVariant() {
+        var self = new CborVariantDecoder[1];
+        CborDeserializer<Object> ref = d -> self[0].next(d);
+        self[0] = new CborVariantDecoder<>(List.of(
+                new LessInfoDecoder<>(CborPrim.UNSIGNED),
+                new LessInfoDecoder<>(new CborArrayDecoder<>(Collectors.toList(), ref)),
+                new LessInfoDecoder<>(new CborArrayDecoder<>(Collectors.toList(), CborPrim.STRING))));
+        return self[0];
+    }
+
+    /** the variant decoder is nested in itself, and has to backtrack after the inner instance backtracked */
+    @Test
+    public void recursiveVariant() {
+        var item = makeRecursiveVariant();
+        // [1, ["a", "b"], [[2]]]
+        var bytes = new byte[]{ (byte) 0x83, 0x01, (byte) 0x82, 0x61, 'a', 0x61, 'b', (byte) 0x81, (byte) 0x81, 0x02 };
+        var x = Cbor.decode(ByteBuffer.wrap(bytes), item);
+        assertEquals(List.of(1L, List.of("a", "b"), List.of(List.of(2L))), x);
+    }
+
+    @Test
+    public void sharedVariantAcrossThreads() {
+        var item = makeRecursiveVariant();
+        var bytes = new byte[]{ (byte) 0x83, 0x01, (byte) 0x82, 0x61, 'a', 0x61, 'b', (byte) 0x81, (byte) 0x81, 0x02 };
+        var expected = Cbor.decode(ByteBuffer.wrap(bytes), item);
+        var results = java.util.stream.IntStream.range(0, 2000).parallel()
+                .mapToObj(i -> Cbor.decode(ByteBuffer.wrap(bytes), item))
+                .toList();
+        for (var r : results)
+            assertEquals(expected, r);
+    }
+
+    /** a mapper that rejects the value makes the variant try the next candidate */
+    @Test
+    public void variantMapperMismatch() {
+        var item = new CborVariantDecoder<>(List.of(
+                CborDeserializer.map(CborPrim.STRING, s -> { throw new UnexpectedCborException.NotMemberOfEnum(s); }),
+                CborPrim.STRING));
+        var bytes = new byte[]{ 0x65, 'h', 'e', 'l', 'l', 'o' };
+        assertEquals("hello", Cbor.decode(ByteBuffer.wrap(bytes), item));
+    }
+
+    /** prints the events of a visitor */
+    static final class Printer implements CborVisitor {
+        final StringBuilder out = new StringBuilder();
+
+        @Override public void visitUnsigned(long value) { out.append(Long.toUnsignedString(value)).append(' '); }
+        @Override public void visitNegative(long arg) { out.append(-1 - arg).append(' '); }
+        @Override public void visitBytes(ByteBuffer bytes) { out.append("h").append(bytes.remaining()).append(' '); }
+        @Override public void beginChunkedBytes() { out.append("h_( "); }
+        @Override public void endChunkedBytes() { out.append(") "); }
+        @Override public void visitText(ByteBuffer utf8) { out.append('"').append(StandardCharsets.UTF_8.decode(utf8)).append("\" "); }
+        @Override public void beginChunkedText() { out.append("t_( "); }
+        @Override public void endChunkedText() { out.append(") "); }
+        @Override public void beginArray(long length) { out.append("[").append(length).append(' '); }
+        @Override public void endArray() { out.append("] "); }
+        @Override public void beginMap(long pairs) { out.append("{").append(pairs).append(' '); }
+        @Override public void endMap() { out.append("} "); }
+        @Override public void visitTag(long tag) { out.append(tag).append("( "); }
+        @Override public void visitBool(boolean value) { out.append(value).append(' '); }
+        @Override public void visitNull() { out.append("null "); }
+        @Override public void visitSimple(int value) { out.append("simple").append(value).append(' '); }
+        @Override public void visitFloat32(float value) { out.append(value).append("f "); }
+        @Override public void visitFloat64(double value) { out.append(value).append("d "); }
+    }
+
+    private static String visit(int... bytes) {
+        var buf = ByteBuffer.allocate(bytes.length);
+        for (int b : bytes)
+            buf.put((byte) b);
+        var decoder = new CborDecoder(buf.flip());
+        var printer = new Printer();
+        decoder.accept(printer);
+        assertFalse(decoder.hasNext());
+        return printer.out.toString().trim();
+    }
+
+    @Test
+    public void visitor() {
+        // [1, -2, {"a": [], h'0102': null}, 1(true)]
+        assertEquals("[4 1 -2 {2 \"a\" [0 ] h2 null } 1( true ]",
+                visit(0x84, 0x01, 0x21, 0xa2, 0x61, 'a', 0x80, 0x42, 1, 2, 0xf6, 0xc1, 0xf5));
+        // [_ {_ "x": (_ "a", "b")}, [_ ], 2.5f, 1.5, simple(99), 18446744073709551615]
+        assertEquals("[-1 {-1 \"x\" t_( \"a\" \"b\" ) } [-1 ] 2.5f 1.5d simple99 18446744073709551615 ]",
+                visit(0x9f, 0xbf, 0x61, 'x', 0x7f, 0x61, 'a', 0x61, 'b', 0xff, 0xff, 0x9f, 0xff,
+                        0xfa, 0x40, 0x20, 0, 0, 0xfb, 0x3f, 0xf8, 0, 0, 0, 0, 0, 0, 0xf8, 99,
+                        0x1b, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff));
+        // (_ h'01', h'')
+        assertEquals("h_( h1 h0 )", visit(0x5f, 0x41, 1, 0x40, 0xff));
+
+        // break in a definite array, map with missing value, int in chunked string, truncated
+        assertThrows(InvalidCborException.class, () -> visit(0x82, 0x01, 0xff));
+        assertThrows(InvalidCborException.class, () -> visit(0xbf, 0x01, 0xff));
+        assertThrows(InvalidCborException.class, () -> visit(0x7f, 0x01, 0xff));
+        assertThrows(InvalidCborException.class, () -> visit(0x82, 0x01));
+    }
+
+    @Test
+    public void visitorDeepNesting() {
+        int depth = 100_000;
+        var buf = ByteBuffer.allocate(depth + 1);
+        for (int i = 0; i < depth; i++)
+            buf.put((byte) 0x81);
+        buf.put((byte) 0x00);
+        var counter = new CborVisitor() {
+            int arrays;
+            int ends;
+            @Override public void beginArray(long length) { arrays++; }
+            @Override public void endArray() { ends++; }
+        };
+        new CborDecoder(buf.flip()).accept(counter);
+        assertEquals(depth, counter.arrays);
+        assertEquals(depth, counter.ends);
+    }
+
+    @Test
+    public void pullTokens() {
+        // [1, -2, "ab", h'00', [_ null], 5(1.5)]
+        var bytes = new byte[]{ (byte) 0x86, 0x01, 0x21, 0x62, 'a', 'b', 0x41, 0x00, (byte) 0x9f, (byte) 0xf6, (byte) 0xff,
+                (byte) 0xc5, (byte) 0xfb, 0x3f, (byte) 0xf8, 0, 0, 0, 0, 0, 0 };
+        var decoder = new CborDecoder(ByteBuffer.wrap(bytes));
+        assertEquals(CborToken.ARRAY, decoder.next());
+        assertEquals(6, decoder.tokenArg());
+        assertEquals(CborToken.UNSIGNED_INTEGER, decoder.next());
+        assertEquals(1, decoder.tokenArg());
+        assertEquals(CborToken.NEGATIVE_INTEGER, decoder.next());
+        assertEquals(1, decoder.tokenArg());
+        assertEquals(CborToken.TEXT, decoder.next());
+        /* the content has to be consumed before the next token */
+        assertThrows(IllegalStateException.class, decoder::next);
+        assertThrows(IllegalStateException.class, decoder::peekTokenType);
+        assertEquals("ab", StandardCharsets.UTF_8.decode(decoder.tokenContent()).toString());
+        assertEquals(CborToken.BYTE_STRING, decoder.next());
+        decoder.skipTokenContent();
+        assertThrows(IllegalStateException.class, decoder::skipTokenContent);
+
+        var raw = decoder.readRawItem();
+        assertEquals(ByteBuffer.wrap(bytes, 8, 3), raw);
+
+        assertEquals(CborToken.TAG, decoder.next());
+        assertEquals(5, decoder.tokenArg());
+        assertEquals(CborToken.FLOAT64, decoder.next());
+        assertEquals(1.5, Double.longBitsToDouble(decoder.tokenArg()));
+        assertFalse(decoder.hasNext());
+
+        var nested = new CborDecoder(raw);
+        assertEquals(CborToken.ARRAY, nested.next());
+        assertTrue(nested.tokenIndefiniteLength());
+        assertEquals(CborToken.NULL, nested.next());
+        assertEquals(CborToken.BREAK, nested.next());
+
+        for (var type : CborType.values())
+            assertEquals(type, CborToken.type(type.ordinal()));
+    }
+
+    @Test
+    public void nestedContainers() {
+        // [{"a": [1, 2]}, {_ "b": [_ 3]}, [], 9]
+        var bytes = new byte[]{ (byte) 0x84, (byte) 0xa1, 0x61, 'a', (byte) 0x82, 0x01, 0x02,
+                (byte) 0xbf, 0x61, 'b', (byte) 0x9f, 0x03, (byte) 0xff, (byte) 0xff, (byte) 0x80, 0x09 };
+        var decoder = new CborDecoder(ByteBuffer.wrap(bytes));
+        var out = new StringBuilder();
+        int root = decoder.enterArray();
+        for (int i = 0; i < 2; i++) {
+            assertTrue(decoder.nextItem(root));
+            int map = decoder.enterMap();
+            while (decoder.nextItem(map)) {
+                out.append(decoder.read(CborPrim.STRING)).append('=');
+                int arr = decoder.enterArray();
+                assertThrows(IllegalStateException.class, () -> decoder.nextItem(map));
+                while (decoder.nextItem(arr))
+                    out.append(decoder.readUInt());
+                out.append(';');
+            }
+        }
+        assertTrue(decoder.nextItem(root));
+        int empty = decoder.enterArray();
+        assertFalse(decoder.nextItem(empty));
+        assertTrue(decoder.nextItem(root));
+        assertEquals(9, decoder.readUInt());
+        assertFalse(decoder.nextItem(root));
+        assertFalse(decoder.hasNext());
+        assertEquals("a=12;b=3;", out.toString());
+
+        var skip = new CborDecoder(ByteBuffer.wrap(bytes));
+        int outer = skip.enterArray();
+        assertTrue(skip.nextItem(outer));
+        skip.enterMap();
+        skip.exitContainer(outer);
+        assertFalse(skip.hasNext());
+        assertThrows(IllegalStateException.class, () -> skip.exitContainer(outer));
+
+        /* the handle of a left container does not match a later container at the same depth */
+        var stale = new CborDecoder(ByteBuffer.wrap(new byte[]{ (byte) 0x80, (byte) 0x81, 0x01 }));
+        int first = stale.enterArray();
+        assertFalse(stale.nextItem(first));
+        int second = stale.enterArray();
+        assertThrows(IllegalStateException.class, () -> stale.nextItem(first));
+        assertThrows(IllegalStateException.class, () -> stale.exitContainer(first));
+        assertTrue(stale.nextItem(second));
+
+        /* containers entered by a failed deserializer are left */
+        // [["x"], 1]
+        var failed = new CborDecoder(ByteBuffer.wrap(new byte[]{ (byte) 0x82, (byte) 0x81, 0x61, 'x', 0x01 }));
+        int list = failed.enterArray();
+        assertTrue(failed.nextItem(list));
+        assertThrows(UnexpectedCborException.class, () -> failed.read(new CborArrayDecoder<>(Collectors.toList(), CborPrim.UNSIGNED)));
+        assertTrue(failed.nextItem(list));
+
+        var manual = new CborDecoder(ByteBuffer.wrap(new byte[]{ (byte) 0x81, 0x01, (byte) 0x9f, (byte) 0xff }));
+        for (int i = 0; i < 2; i++) {
+            var arr = manual.readArrayManual();
+            while (arr.hasNext()) {
+                arr.next();
+                manual.readUInt();
+            }
+            arr.end();
+        }
+    }
+
+    @Test
+    public void seqStream() throws IOException {
+        var out = new CborOutputBuffer();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        var expected = new ArrayList<List<Long>>();
+        var encoder = new CborCollectionArrayEncoder<Long, List<Long>>(CborPrim.UNSIGNED);
+        for (long i = 0; i < 5000; i++) {
+            var item = List.of(i, i * 1000, i % 7);
+            expected.add(item);
+            encoder.encode(enc, item);
+        }
+        var bytes = out.toByteArray();
+        var item = new CborArrayDecoder<>(Collectors.toList(), CborPrim.UNSIGNED);
+
+        var seq = new CborSeq(ByteBuffer.wrap(bytes));
+        assertEquals(expected.get(0), seq.next(item));
+        assertEquals(expected.subList(1, expected.size()), seq.stream(item).toList());
+        assertEquals(expected.get(1), seq.next(item));
+
+        var all = new CborSeq(ByteBuffer.wrap(bytes));
+        assertEquals(expected, all.stream(item).parallel().toList());
+        assertEquals(expected.stream().mapToLong(l -> l.get(1)).sum(),
+                all.stream(item).parallel().mapToLong(l -> l.get(1)).sum());
+
+        var spliterator = new CborSeq(ByteBuffer.wrap(bytes)).stream(item).spliterator();
+        var prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        var first = new ArrayList<List<Long>>();
+        prefix.forEachRemaining(first::add);
+        spliterator.forEachRemaining(first::add);
+        assertEquals(expected, first);
+
+        assertEquals(List.of(), new CborSeq(ByteBuffer.allocate(0)).stream(item).parallel().toList());
+    }
+
+    /** input stream, that returns at most 5 bytes per read, and counts how many bytes have been read */
+    static final class TrickleInputStream extends ByteArrayInputStream {
+        final AtomicInteger read = new AtomicInteger();
+
+        TrickleInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int n = super.read(b, off, Math.min(len, 5));
+            if (n > 0)
+                read.addAndGet(n);
+            return n;
+        }
+    }
+
+    static final class Collecting<T> implements Flow.Subscriber<T> {
+        final List<T> items = new CopyOnWriteArrayList<>();
+        final CompletableFuture<List<T>> done = new CompletableFuture<>();
+        final BlockingQueue<Integer> progress = new LinkedBlockingQueue<>();
+        volatile Flow.Subscription subscription;
+
+        @Override public void onSubscribe(Flow.Subscription subscription) { this.subscription = subscription; }
+        @Override public void onNext(T item) { items.add(item); progress.add(items.size()); }
+        @Override public void onError(Throwable throwable) { done.completeExceptionally(throwable); }
+        @Override public void onComplete() { done.complete(items); }
+    }
+
+    @Test
+    public void publisher() throws Exception {
+        var out = new CborOutputBuffer();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        var expected = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            var s = "item " + i + " " + "x".repeat(i % 300);
+            expected.add(s);
+            enc.writeText(s);
+        }
+        var bytes = out.toByteArray();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var in = new TrickleInputStream(bytes);
+            var subscriber = new Collecting<String>();
+            new CborPublisher<>(in, CborPrim.STRING, executor).subscribe(subscriber);
+            subscriber.subscription.request(3);
+            for (int i = 1; i <= 3; i++)
+                assertEquals(i, subscriber.progress.poll(10, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            assertEquals(3, subscriber.items.size());
+            assertTrue(in.read.get() < bytes.length / 10);
+
+            subscriber.subscription.request(Long.MAX_VALUE);
+            assertEquals(expected, subscriber.done.get(10, TimeUnit.SECONDS));
+
+            var truncated = new Collecting<String>();
+            new CborPublisher<>(new TrickleInputStream(Arrays.copyOf(bytes, 100)), CborPrim.STRING, executor).subscribe(truncated);
+            truncated.subscription.request(Long.MAX_VALUE);
+            var e = assertThrows(ExecutionException.class, () -> truncated.done.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(EOFException.class, e.getCause());
+
+            /* a reserved head fails right away, instead of buffering the rest of the input */
+            var garbage = Arrays.copyOf(new byte[] { 0x61, 'a', 0x1c }, 1 << 20);
+            var garbageIn = new TrickleInputStream(garbage);
+            var malformed = new Collecting<String>();
+            new CborPublisher<>(garbageIn, CborPrim.STRING, executor).subscribe(malformed);
+            malformed.subscription.request(Long.MAX_VALUE);
+            e = assertThrows(ExecutionException.class, () -> malformed.done.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(InvalidCborException.class, e.getCause());
+            assertEquals(List.of("a"), malformed.items);
+            assertTrue(garbageIn.read.get() < garbage.length / 10);
+
+            var large = new Collecting<String>();
+            new CborPublisher<>(Channels.newChannel(new TrickleInputStream(bytes)), CborPrim.STRING, executor, ByteOrder.BIG_ENDIAN, 64)
+                    .subscribe(large);
+            large.subscription.request(Long.MAX_VALUE);
+            e = assertThrows(ExecutionException.class, () -> large.done.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+            assertEquals(expected.subList(0, 55), large.items);
+
+            assertThrows(NullPointerException.class, () -> new CborPublisher<>(in, CborPrim.STRING, executor).subscribe(null));
+            assertThrows(IllegalArgumentException.class,
+                    () -> new CborPublisher<>(Channels.newChannel(in), CborPrim.STRING, executor, ByteOrder.BIG_ENDIAN, 0));
+        }
+    }
+
+    @Test
+    public void framedSocket() throws Exception {
+        CborSerializer<Integer> message = (enc, i) -> {
+            enc.beginArray();
+            enc.writeUnsigned(i);
+            enc.writeByteString(new byte[(i * 997) % 20000]);
+            enc.writeTag(1);
+            enc.writeText("message " + i);
+            enc.endArray();
+        };
+        var item = new CborArrayDecoder<>(Collectors.toList(), CborValue.CODEC);
+
+        try (var server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             var client = SocketChannel.open(server.getLocalAddress());
+             var accepted = server.accept();
+             var selector = Selector.open()) {
+            var sender = new FutureTask<Void>(() -> {
+                var writer = new CborFrameWriter(client);
+                for (int i = 0; i < 500; i++) {
+                    writer.write(message, i);
+                    if (i % 50 == 49)
+                        assertTrue(writer.flush());
+                }
+                assertEquals(0, writer.pending());
+                client.shutdownOutput();
+                return null;
+            });
+            new Thread(sender).start();
+
+            accepted.configureBlocking(false);
+            accepted.register(selector, SelectionKey.OP_READ);
+            var reader = new CborFrameReader(accepted);
+            int received = 0;
+            while (!reader.isEndOfStream()) {
+                var decoder = reader.next();
+                if (decoder == null) {
+                    selector.select(10_000);
+                    selector.selectedKeys().clear();
+                    continue;
+                }
+                var items = decoder.read(item);
+                assertFalse(decoder.hasNext());
+                assertEquals(received, ((CborValue.Unsigned) items.get(0)).value);
+                assertEquals((received * 997) % 20000, ((CborValue.Bytes) items.get(1)).value.length);
+                received++;
+            }
+            assertEquals(500, received);
+            sender.get();
+        }
+
+        var truncated = Cbor.encode(ByteOrder.BIG_ENDIAN, 7, message);
+        var reader = new CborFrameReader(Channels.newChannel(new ByteArrayInputStream(Arrays.copyOf(truncated, 40))));
+        assertThrows(EOFException.class, reader::next);
+
+        var limited = new CborFrameReader(Channels.newChannel(new ByteArrayInputStream(truncated)), ByteOrder.BIG_ENDIAN, 100);
+        assertThrows(IOException.class, limited::next);
+    }
+
+    @Test
+    public void framedSlowPeer() throws IOException {
+        var received = new ByteArrayOutputStream();
+        /* non-blocking channel, that accepts budget bytes until it is full */
+        var channel = new WritableByteChannel() {
+            int budget;
+
+            @Override
+            public int write(ByteBuffer src) {
+                int n = Math.min(budget, src.remaining());
+                received.write(src.array(), src.arrayOffset() + src.position(), n);
+                src.position(src.position() + n);
+                budget -= n;
+                return n;
+            }
+
+            @Override public boolean isOpen() { return true; }
+            @Override public void close() {}
+        };
+        var writer = new CborFrameWriter(channel);
+        /* two messages of 3 bytes per round, and the peer always leaves the last 2 bytes unsent */
+        for (int i = 0; i < 2000; i += 2) {
+            writer.write(CborPrim.UNSIGNED, 1000L + i);
+            writer.write(CborPrim.UNSIGNED, 1000L + i + 1);
+            channel.budget = i == 0 ? 4 : 6;
+            assertFalse(writer.flush());
+            assertEquals(2, writer.pending());
+        }
+        channel.budget = Integer.MAX_VALUE;
+        assertTrue(writer.flush());
+        assertEquals(0, writer.pending());
+
+        var seq = new CborSeq(ByteBuffer.wrap(received.toByteArray()));
+        for (int i = 0; i < 2000; i++)
+            assertEquals(1000L + i, seq.next(CborPrim.UNSIGNED));
+        assertFalse(seq.hasNext());
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        var metrics = new CborMetrics();
+        var out = new CborOutputBuffer();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        enc.setMetrics(metrics);
+        enc.writeArray(3);
+        enc.writeUnsigned(1);
+        enc.writeText("abc");
+        enc.beginMap();
+        enc.writeText("k");
+        enc.writeArray(1);
+        enc.writeByteString(new byte[]{ 1, 2 });
+        enc.endMap();
+        var bytes = out.toByteArray();
+
+        assertEquals(bytes.length, metrics.getEncodedBytes());
+        assertEquals(6, metrics.getEncodedStringBytes());
+        assertEquals(2, metrics.getEncodedTokens().get("Array"));
+        assertEquals(1, metrics.getEncodedTokens().get("Map"));
+        assertEquals(2, metrics.getEncodedTokens().get("Text"));
+
+        var decoder = new CborDecoder(ByteBuffer.wrap(bytes));
+        decoder.setMetrics(metrics);
+        decoder.read(CborValue.CODEC);
+        assertEquals(bytes.length, metrics.getDecodedBytes());
+        assertEquals(6, metrics.getDecodedStringBytes());
+        assertEquals(7, metrics.getDecodedTokens().values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(3, metrics.getMaxDepth());
+
+        var variant = new CborVariantDecoder<Long>(List.of(
+                new CborFixedTagDecoder<>(1, CborPrim.UNSIGNED),
+                new CborFixedTagDecoder<>(2, CborPrim.UNSIGNED)));
+        decoder.reset(ByteBuffer.wrap(new byte[]{ (byte) 0xC2, 5 }));
+        assertEquals(5, decoder.read(variant));
+        assertEquals(1, metrics.getVariantBacktracks());
+
+        decoder.reset(ByteBuffer.wrap(new byte[]{ (byte) 0x81, 5 }));
+        assertThrows(UnexpectedCborException.class, () -> decoder.read(new CborArrayDecoder<>(Collectors.toList(), CborPrim.STRING)));
+        assertEquals(Map.of("UnexpectedType", 1L), metrics.getExceptions());
+
+        var name = metrics.registerMBean("metrics-test");
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(metrics.getDecodedBytes(), server.getAttribute(name, "DecodedBytes"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "MaxDepth"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    @Test
+    void flightRecorderEvents() throws IOException {
+        var large = new CborValue.Arr(List.of(
+                new CborValue.Arr(List.of(new CborValue.Bytes(new byte[200]))),
+                new CborValue.Unsigned(1)));
+        var largeBytes = Cbor.encode(ByteOrder.BIG_ENDIAN, large, CborValue.CODEC);
+        var smallBytes = Cbor.encode(ByteOrder.BIG_ENDIAN, new CborValue.Unsigned(1), CborValue.CODEC);
+
+        List<RecordedEvent> events;
+        try (var recording = new Recording()) {
+            recording.enable("dev.vxcc.tinyjcbor.SlowOperation").withThreshold(Duration.ZERO);
+            recording.enable("dev.vxcc.tinyjcbor.LargeMessage").with("minSize", "100 bytes");
+            recording.start();
+            Cbor.decode(ByteBuffer.wrap(largeBytes));
+            Cbor.decode(ByteBuffer.wrap(smallBytes));
+            var reused = new CborDecoder(ByteBuffer.wrap(largeBytes));
+            reused.read(CborValue.CODEC);
+            reused.reset(ByteBuffer.wrap(largeBytes));
+            reused.read(CborValue.CODEC);
+            recording.stop();
+            var file = Files.createTempFile("tinyjcbor", ".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.delete(file);
+            }
+        }
+
+        var decodes = events.stream().filter(e -> e.getString("operation").equals("Cbor.decode")).toList();
+        var slow = decodes.stream().filter(e -> e.getEventType().getName().equals("dev.vxcc.tinyjcbor.SlowOperation")).toList();
+        assertEquals(2, slow.size());
+        assertEquals(largeBytes.length, slow.get(0).getLong("bytes"));
+        assertEquals(4, slow.get(0).getLong("items"));
+        assertEquals(2, slow.get(0).getInt("depth"));
+        assertEquals(smallBytes.length, slow.get(1).getLong("bytes"));
+
+        var largeEvents = decodes.stream().filter(e -> e.getEventType().getName().equals("dev.vxcc.tinyjcbor.LargeMessage")).toList();
+        assertEquals(1, largeEvents.size());
+        assertEquals(largeBytes.length, largeEvents.get(0).getLong("bytes"));
+        assertEquals(CborValue.CODEC.getClass().getName(), largeEvents.get(0).getClass("codec").getName());
+
+        /* nested reads are part of the outermost event, of Cbor.decode too */
+        var reads = events.stream()
+                .filter(e -> e.getString("operation").equals("CborDecoder.read"))
+                .filter(e -> e.getEventType().getName().equals("dev.vxcc.tinyjcbor.SlowOperation"))
+                .toList();
+        assertEquals(2, reads.size());
+        for (var read : reads) {
+            assertEquals(largeBytes.length, read.getLong("bytes"));
+            assertEquals(4, read.getLong("items"));
+            assertEquals(2, read.getInt("depth"));
+        }
+        assertEquals(2 + 2 + 3, events.size());
+    }
 }
@@ -1,10 +1,24 @@
 import dev.vxcc.tinyjcbor.Cbor;
+import dev.vxcc.tinyjcbor.CborDecoder;
+import dev.vxcc.tinyjcbor.CborEncoder;
+import dev.vxcc.tinyjcbor.CborOutputBuffer;
+import dev.vxcc.tinyjcbor.CborSegmentedOutput;
 import dev.vxcc.tinyjcbor.serde.*;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -63,4 +77,212 @@ public class EncodeTests {
         assertEquals((byte) 0xff, buf.get());
         assertFalse(buf.hasRemaining());
     }
+
+    @Test
+    public void backpatchedArray() throws IOException {
+        var out = new CborOutputBuffer();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        enc.beginArray();
+        enc.writeSigned(1);
+        enc.writeSigned(2);
+        enc.endArray();
+
+        var buf = ByteBuffer.wrap(out.toByteArray());
+        assertEquals((byte) 0x82, buf.get());
+        assertEquals((byte) 0x01, buf.get());
+        assertEquals((byte) 0x02, buf.get());
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    public void backpatchedNestedShifted() throws IOException {
+        var out = new CborOutputBuffer();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        enc.beginMap();
+        enc.writeText("a");
+        enc.beginArray();
+        for (int i = 0; i < 300; i++) {
+            enc.writeArray(2);
+            enc.writeTag(4);
+            enc.writeUnsigned(i);
+            var w = enc.writeArray();
+            enc.writeNull();
+            w.end();
+        }
+        enc.endArray();
+        enc.writeText("b");
+        enc.beginArray();
+        enc.endArray();
+        enc.endMap();
+
+        var buf = ByteBuffer.wrap(out.toByteArray());
+        assertEquals((byte) 0xa2, buf.get());
+        assertEquals((byte) 0x61, buf.get());
+        assertEquals((byte) 'a', buf.get());
+        assertEquals((byte) 0x99, buf.get());
+        assertEquals((short) 300, buf.getShort());
+
+        buf.position(3);
+        var items = Cbor.decode(buf, new CborArrayDecoder<>(Collectors.toList(), dec -> {
+            dec.readAny();
+            return 0;
+        }));
+        assertEquals(300, items.size());
+        assertEquals((byte) 0x61, buf.get());
+        assertEquals((byte) 'b', buf.get());
+        assertEquals((byte) 0x80, buf.get());
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    public void backpatchRequiresBuffer() {
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, new ByteArrayOutputStream());
+        assertThrows(IllegalStateException.class, enc::beginArray);
+    }
+
+    @Test
+    public void backpatchUnbalanced() throws IOException {
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, new CborOutputBuffer());
+        enc.beginMap();
+        enc.writeText("key");
+        assertThrows(IllegalStateException.class, enc::endMap);
+        assertThrows(IllegalStateException.class, enc::endArray);
+    }
+
+    @Test
+    public void nestedIndefinite() throws IOException {
+        var out = new ByteArrayOutputStream();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        var outer = enc.writeArray();
+        var inner = enc.writeArray();
+        enc.writeUnsigned(24);
+        enc.writeUnsigned(200);
+        inner.end();
+        outer.end();
+
+        var buf = ByteBuffer.wrap(out.toByteArray());
+        assertEquals((byte) 0x9f, buf.get());
+        assertEquals((byte) 0x9f, buf.get());
+        assertEquals((byte) 0x18, buf.get());
+        assertEquals((byte) 24, buf.get());
+        assertEquals((byte) 0x18, buf.get());
+        assertEquals((byte) 200, buf.get());
+        assertEquals((byte) 0xff, buf.get());
+        assertEquals((byte) 0xff, buf.get());
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    public void segmentedOutputReferencesLargeByteStrings() throws IOException {
+        var blob = new byte[10000];
+        for (int i = 0; i < blob.length; i++)
+            blob[i] = (byte) i;
+
+        var out = new CborSegmentedOutput(64, 1024);
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        enc.writeArray(3);
+        enc.writeText("a small string, that is longer than one chunk of the output");
+        enc.writeByteString(blob);
+        enc.writeByteString(ByteBuffer.allocateDirect(2000));
+
+        var bufs = out.toByteBuffers();
+        assertTrue(bufs.length >= 4);
+        assertTrue(java.util.Arrays.stream(bufs).anyMatch(b -> b.remaining() == blob.length));
+
+        var file = Files.createTempFile("tinyjcbor", ".cbor");
+        try (var ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            assertEquals(out.size(), out.writeTo(ch));
+        }
+        assertArrayEquals(out.toByteArray(), Files.readAllBytes(file));
+        Files.delete(file);
+
+        var buf = ByteBuffer.wrap(out.toByteArray());
+        var dec = Cbor.decode(buf, new CborArrayDecoder<>(Collectors.toList(), dec2 -> {
+            dec2.readAny();
+            return 0;
+        }));
+        assertEquals(3, dec.size());
+        assertFalse(buf.hasRemaining());
+
+        var expected = new ByteArrayOutputStream();
+        var expectedEnc = new CborEncoder(ByteOrder.BIG_ENDIAN, expected);
+        expectedEnc.writeArray(3);
+        expectedEnc.writeText("a small string, that is longer than one chunk of the output");
+        expectedEnc.writeByteString(blob);
+        expectedEnc.writeByteString(new byte[2000]);
+        assertArrayEquals(expected.toByteArray(), out.toByteArray());
+
+        out.reset();
+        enc.writeUnsigned(1);
+        assertArrayEquals(new byte[]{ 1 }, out.toByteArray());
+    }
+
+    @Test
+    public void reuseEncoderAndDecoder() throws IOException {
+        var serde = new CborSerDe<>(new CborArrayDecoder<>(Collectors.toList(), CborPrim.STRING), new CborCollectionArrayEncoder<>(CborPrim.STRING));
+        var out = new CborOutputBuffer();
+        var encoder = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        var decoder = new CborDecoder(ByteBuffer.allocate(0));
+
+        // leave the encoder and decoder in the middle of items
+        encoder.beginArray();
+        encoder.writeChunkedText();
+        decoder.reset(ByteBuffer.wrap(new byte[]{ (byte) 0x82, (byte) 0x81, 0x01 }));
+        decoder.enterArray();
+        decoder.readArrayManual();
+        decoder.acquireSnapshot();
+
+        for (int i = 0; i < 3; i++) {
+            out.reset();
+            encoder.reset(out);
+            var value = List.of("msg", Integer.toString(i));
+            serde.encode(encoder, value);
+            assertArrayEquals(Cbor.encode(ByteOrder.BIG_ENDIAN, value, serde), out.toByteArray());
+
+            decoder.reset(out.asByteBuffer());
+            assertEquals(value, decoder.read(serde));
+            assertFalse(decoder.hasNext());
+        }
+        decoder.reset(ByteBuffer.wrap(new byte[]{ (byte) 0x80 }));
+        decoder.readArrayManual().end();
+    }
+
+    @Test
+    public void parallelEncode() throws IOException {
+        var records = new ArrayList<List<String>>();
+        var map = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < 10_000; i++) {
+            records.add(List.of("r" + i, Integer.toString(i * 31)));
+            map.put("k" + i, (long) i * i);
+        }
+        var record = new CborCollectionArrayEncoder<String, List<String>>(CborPrim.STRING);
+        var pool = new ForkJoinPool(4);
+        try {
+            for (var order : new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+                var sequential = Cbor.encode(order, records, new CborCollectionArrayEncoder<>(record));
+                var sequentialMap = Cbor.encode(order, map, new CborMapEncoder<>(CborPrim.STRING, CborPrim.UNSIGNED));
+                for (int chunkSize : new int[]{ 1, 333, 100_000 }) {
+                    var parallel = new CborParallelArrayEncoder<List<String>, List<List<String>>>(record, pool, chunkSize);
+                    assertArrayEquals(sequential, Cbor.encode(order, records, parallel));
+                    // again, with pooled encoders, nested in a patched array, and into segmented output
+                    var out = new CborOutputBuffer();
+                    var enc = new CborEncoder(order, out);
+                    enc.beginArray();
+                    parallel.encode(enc, records);
+                    enc.endArray();
+                    var bytes = out.toByteArray();
+                    assertEquals(0x81, bytes[0] & 0xff);
+                    assertArrayEquals(sequential, Arrays.copyOfRange(bytes, 1, bytes.length));
+                    var seg = new CborSegmentedOutput(1024, 512);
+                    parallel.encode(new CborEncoder(order, seg), records);
+                    assertArrayEquals(sequential, seg.toByteArray());
+
+                    var parallelMap = new CborParallelMapEncoder<String, Long, LinkedHashMap<String, Long>>(CborPrim.STRING, CborPrim.UNSIGNED, pool, chunkSize);
+                    assertArrayEquals(sequentialMap, Cbor.encode(order, map, parallelMap));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
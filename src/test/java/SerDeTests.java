@@ -1,18 +1,26 @@
 import dev.vxcc.tinyjcbor.Cbor;
 import dev.vxcc.tinyjcbor.CborDecoder;
 import dev.vxcc.tinyjcbor.CborEncoder;
+import dev.vxcc.tinyjcbor.CborTags;
+import dev.vxcc.tinyjcbor.InvalidCborException;
+import dev.vxcc.tinyjcbor.UnexpectedCborException;
 import dev.vxcc.tinyjcbor.serde.*;
+import dev.vxcc.tinyjcbor.util.CborEmbedded;
 import dev.vxcc.tinyjcbor.util.MapConstructor;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.concurrent.ForkJoinPool;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class SerDeTests {
     @Test
@@ -267,4 +275,286 @@ public class SerDeTests {
         assertEquals("hello world", dec);
         assertEquals(0, buf.remaining());
     }
+
+    @Test
+    public void tryNextWithoutExceptions() throws IOException {
+        var out = new ByteArrayOutputStream();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        enc.writeArray(3);
+        enc.writeMap(1);
+        enc.writeText("a");
+        enc.writeText("b");
+        enc.writeTag(7);
+        enc.writeUnsigned(2);
+        var arr = enc.writeArray();
+        enc.writeSigned(-1);
+        arr.end();
+        var bytes = out.toByteArray();
+
+        var mapOfNumbers = new CborMapDecoder<>(MapConstructor.map(HashMap::new), CborPrim.STRING, CborPrim.UNSIGNED);
+        var mapOfStrings = new CborMapDecoder<>(MapConstructor.map(HashMap::new), CborPrim.STRING, CborPrim.STRING);
+        var decoder = new CborDecoder(ByteBuffer.wrap(bytes));
+        var snap = decoder.snapshot();
+        assertSame(CborDeserializer.NO_MATCH, CborPrim.UNSIGNED.tryNext(decoder));
+        decoder.reset(snap);
+        decoder.readArrayManual().next();
+        snap = decoder.snapshot();
+        assertSame(CborDeserializer.NO_MATCH, mapOfNumbers.tryNext(decoder));
+        decoder.reset(snap);
+        assertEquals(Map.of("a", "b"), mapOfStrings.tryNext(decoder));
+
+        var item = new CborVariantDecoder<Object>(List.of(
+                new CborFixedTagDecoder<>(6, CborPrim.UNSIGNED),
+                new CborFixedTagDecoder<>(7, CborPrim.STRING),
+                new CborFixedTagDecoder<>(7, CborPrim.UNSIGNED),
+                new CborArrayDecoder<>(Collectors.toList(), CborPrim.UNSIGNED),
+                new CborArrayDecoder<>(Collectors.toList(), CborPrim.SIGNED),
+                mapOfNumbers,
+                mapOfStrings), "test");
+        var all = Cbor.decode(ByteBuffer.wrap(bytes), new CborArrayDecoder<>(Collectors.toList(), item));
+        assertEquals(List.of(Map.of("a", "b"), 2L, List.of(-1L)), all);
+
+        var err = assertThrows(UnexpectedCborException.UnexpectedType.class,
+                () -> Cbor.decode(ByteBuffer.wrap(new byte[]{ (byte) 0xf6 }), item));
+        assertEquals("test", err.expected);
+
+        item.setExpected("renamed");
+        err = assertThrows(UnexpectedCborException.UnexpectedType.class,
+                () -> Cbor.decode(ByteBuffer.wrap(new byte[]{ (byte) 0xf6 }), item));
+        assertEquals("renamed", err.expected);
+    }
+
+    sealed interface Shape permits Circle, Square, Label {}
+    record Circle(long radius) implements Shape {}
+    record Square(long side) implements Shape {}
+    record Label(String text) implements Shape {}
+
+    private static final CborSerDe<Circle> CIRCLE = new CborSerDe<>(
+            CborDeserializer.map(CborPrim.UNSIGNED, Circle::new), (out, x) -> out.writeUnsigned(x.radius()));
+    private static final CborSerDe<Square> SQUARE = new CborSerDe<>(
+            CborDeserializer.map(CborPrim.UNSIGNED, Square::new), (out, x) -> out.writeUnsigned(x.side()));
+    private static final CborSerDe<Label> LABEL = new CborSerDe<>(
+            CborDeserializer.map(CborPrim.STRING, Label::new), (out, x) -> out.writeText(x.text()));
+
+    @Test
+    public void sealedTagged() {
+        var codec = CborSealedCodec.tagged(Shape.class)
+                .variant(Circle.class, 7, CIRCLE)
+                .variant(Square.class, 40000, SQUARE)
+                .variant(Label.class, 0xFFFFFFFFFFL, LABEL)
+                .build();
+        var list = new CborCollectionArrayEncoder<>(codec);
+        List<Shape> shapes = List.of(new Circle(3), new Square(4), new Label("x"), new Circle(5));
+        var bytes = Cbor.encode(ByteOrder.BIG_ENDIAN, shapes, list);
+        assertEquals((byte) 0xc7, bytes[1]);
+        assertEquals((byte) 0xd9, bytes[3]);
+        assertEquals(shapes, Cbor.decode(ByteBuffer.wrap(bytes), new CborArrayDecoder<>(Collectors.toList(), codec)));
+        assertEquals(shapes, Cbor.decode(ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN),
+                new CborArrayDecoder<>(Collectors.toList(), new CborVariantDecoder<Shape>(List.of(codec)))));
+
+        var unknown = new byte[]{ (byte) 0xc8, 0x01 };
+        assertThrows(UnexpectedCborException.WrongTag.class, () -> Cbor.decode(ByteBuffer.wrap(unknown), codec));
+        assertSame(CborDeserializer.NO_MATCH, codec.tryNext(new CborDecoder(ByteBuffer.wrap(unknown))));
+        assertThrows(IllegalStateException.class, () -> CborSealedCodec.tagged(Shape.class).variant(Circle.class, 1, CIRCLE).build());
+    }
+
+    @Test
+    public void sealedDiscriminated() throws IOException {
+        var codec = CborSealedCodec.discriminated(Shape.class)
+                .variant(Circle.class, "circle", CIRCLE)
+                .variant(Square.class, 1, SQUARE)
+                .variant(Label.class, 1000, LABEL)
+                .build();
+        for (var shape : List.of(new Circle(3), new Square(4), new Label("x"))) {
+            var bytes = Cbor.encode(ByteOrder.BIG_ENDIAN, shape, codec);
+            assertEquals((byte) 0x82, bytes[0]);
+            assertEquals(shape, Cbor.decode(ByteBuffer.wrap(bytes), codec));
+        }
+
+        var out = new ByteArrayOutputStream();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        var arr = enc.writeArray();
+        enc.writeText("circle");
+        enc.writeUnsigned(9);
+        arr.end();
+        assertEquals(new Circle(9), Cbor.decode(ByteBuffer.wrap(out.toByteArray()), codec));
+
+        // [1, "x"]
+        var wrongPayload = new byte[]{ (byte) 0x82, 0x01, 0x61, 'x' };
+        assertSame(CborDeserializer.NO_MATCH, codec.tryNext(new CborDecoder(ByteBuffer.wrap(wrongPayload))));
+    }
+
+    private static <T> T roundTrip(T value, CborSerDe<T> serde) {
+        var bytes = Cbor.encode(ByteOrder.BIG_ENDIAN, value, serde);
+        return Cbor.decode(ByteBuffer.wrap(bytes), serde);
+    }
+
+    @Test
+    public void standardTags() {
+        for (var x : List.of("0", "-1", "9223372036854775807", "-9223372036854775808", "18446744073709551615",
+                "18446744073709551616", "-18446744073709551616", "-18446744073709551617", "123456789012345678901234567890"))
+            assertEquals(new BigInteger(x), roundTrip(new BigInteger(x), CborTagCodecs.BIG_INTEGER), x);
+        // -2^64 fits into a CBOR negative integer
+        assertEquals(9, Cbor.encode(ByteOrder.BIG_ENDIAN, new BigInteger("-18446744073709551616"), CborTagCodecs.BIG_INTEGER).length);
+        // RFC 8949 example: 2(h'010000000000000000')
+        var big = new byte[]{ (byte) 0xc2, 0x49, 1, 0, 0, 0, 0, 0, 0, 0, 0 };
+        assertEquals(BigInteger.ONE.shiftLeft(64), Cbor.decode(ByteBuffer.wrap(big), CborTagCodecs.BIG_INTEGER));
+
+        for (var x : List.of("273.15", "-0.001", "1E+30", "123456789012345678901234567890.5"))
+            assertEquals(new BigDecimal(x), roundTrip(new BigDecimal(x), CborTagCodecs.BIG_DECIMAL), x);
+        // RFC 8949 example: 4([-2, 27315])
+        var dec = new byte[]{ (byte) 0xc4, (byte) 0x82, 0x21, 0x19, 0x6a, (byte) 0xb3 };
+        assertEquals(new BigDecimal("273.15"), Cbor.decode(ByteBuffer.wrap(dec), CborTagCodecs.BIG_DECIMAL));
+
+        assertEquals(Instant.ofEpochSecond(1363896240), roundTrip(Instant.ofEpochSecond(1363896240), CborTagCodecs.EPOCH_TIME));
+        assertEquals(Instant.ofEpochSecond(-5), roundTrip(Instant.ofEpochSecond(-5), CborTagCodecs.EPOCH_TIME));
+        assertEquals(Instant.ofEpochSecond(1363896240, 500_000_000), roundTrip(Instant.ofEpochSecond(1363896240, 500_000_000), CborTagCodecs.EPOCH_TIME));
+        var nan = new byte[]{ (byte) 0xc1, (byte) 0xf9, 0x7e, 0x00 };
+        assertThrows(UnexpectedCborException.class, () -> Cbor.decode(ByteBuffer.wrap(nan), CborTagCodecs.EPOCH_TIME));
+
+        var uuid = UUID.fromString("123e4567-e89b-12d3-a456-426614174000");
+        var uuidBytes = Cbor.encode(ByteOrder.BIG_ENDIAN, uuid, CborTagCodecs.UUID);
+        assertEquals(19, uuidBytes.length);
+        assertEquals(uuid, Cbor.decode(ByteBuffer.wrap(uuidBytes), CborTagCodecs.UUID));
+
+        var registry = CborTagCodecs.registerAll(new CborTagRegistry());
+        assertEquals(BigInteger.ONE.shiftLeft(64), Cbor.decode(ByteBuffer.wrap(big), registry));
+        assertEquals(new BigDecimal("273.15"), Cbor.decode(ByteBuffer.wrap(dec), registry));
+        assertEquals(uuid, Cbor.decode(ByteBuffer.wrap(uuidBytes), registry));
+        assertArrayEquals(uuidBytes, Cbor.encode(ByteOrder.BIG_ENDIAN, uuid, registry));
+        assertArrayEquals(big, Cbor.encode(ByteOrder.BIG_ENDIAN, BigInteger.ONE.shiftLeft(64), registry));
+
+        // a byte string of 2 GB, that ends after one byte, is not allocated before the bytes are there
+        var truncated = new byte[]{ 0x5a, 0x7f, (byte) 0xff, (byte) 0xff, 0x00 };
+        assertThrows(InvalidCborException.class, () -> Cbor.decode(ByteBuffer.wrap(truncated), CborPrim.BYTES));
+        assertThrows(InvalidCborException.class, () -> Cbor.decode(ByteBuffer.wrap(truncated)));
+        var truncatedBig = new byte[]{ (byte) 0xc2, 0x5a, 0x7f, (byte) 0xff, (byte) 0xff, 0x00 };
+        assertThrows(InvalidCborException.class, () -> Cbor.decode(ByteBuffer.wrap(truncatedBig), CborTagCodecs.BIG_INTEGER));
+        var truncatedUuid = new byte[]{ (byte) 0xd8, 0x25, 0x5a, 0x7f, (byte) 0xff, (byte) 0xff, 0x00 };
+        assertThrows(UnexpectedCborException.class, () -> Cbor.decode(ByteBuffer.wrap(truncatedUuid), CborTagCodecs.UUID));
+        var truncatedChunk = new byte[]{ (byte) 0xd8, 0x25, 0x5f, 0x5a, 0x7f, (byte) 0xff, (byte) 0xff, 0x00 };
+        assertThrows(InvalidCborException.class, () -> Cbor.decode(ByteBuffer.wrap(truncatedChunk), CborTagCodecs.UUID));
+    }
+
+    @Test
+    public void embeddedCbor() throws IOException {
+        var inner = CborEmbedded.encode(ByteOrder.BIG_ENDIAN, List.of("a", "b"), new CborCollectionArrayEncoder<>(CborPrim.STRING));
+        var bytes = Cbor.encode(ByteOrder.BIG_ENDIAN, inner, CborEmbedded.CODEC);
+        assertEquals(CborTags.ENCODED_CBOR, Byte.toUnsignedInt(bytes[0]) & 0x1f);
+
+        var buf = ByteBuffer.wrap(bytes);
+        var embedded = Cbor.decode(buf, CborEmbedded.CODEC);
+        assertEquals(0, buf.remaining());
+        assertEquals(inner, embedded);
+        // a view of the decoded buffer
+        assertSame(bytes, embedded.bytes().array());
+        assertEquals(List.of("a", "b"), embedded.decode(new CborArrayDecoder<>(Collectors.toList(), CborPrim.STRING)));
+        assertEquals(List.of("a", "b"), embedded.decode(new CborArrayDecoder<>(Collectors.toList(), CborPrim.STRING)));
+        assertArrayEquals(bytes, Cbor.encode(ByteOrder.BIG_ENDIAN, embedded, CborEmbedded.CODEC));
+
+        var out = new ByteArrayOutputStream();
+        var enc = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        embedded.writeUnwrapped(enc);
+        assertArrayEquals(Cbor.encode(ByteOrder.BIG_ENDIAN, List.of("a", "b"), new CborCollectionArrayEncoder<>(CborPrim.STRING)), out.toByteArray());
+
+        // chunked byte strings are copied
+        out.reset();
+        enc.writeTag(CborTags.ENCODED_CBOR);
+        var chunked = enc.writeChunkedByteString();
+        chunked.writeChunk(new byte[]{ (byte) 0x82 });
+        chunked.writeChunk(new byte[]{ 0x01, 0x02 });
+        chunked.end();
+        var copied = Cbor.decode(ByteBuffer.wrap(out.toByteArray()), CborEmbedded.CODEC);
+        assertEquals(List.of(1L, 2L), copied.decode(new CborArrayDecoder<>(Collectors.toList(), CborPrim.UNSIGNED)));
+
+        // 24(h'...') that ends after 2 of 16 bytes
+        var truncated = new byte[]{ (byte) 0xd8, 0x18, 0x50, (byte) 0x82, 0x01 };
+        assertThrows(InvalidCborException.class, () -> Cbor.decode(ByteBuffer.wrap(truncated), CborEmbedded.CODEC));
+    }
+
+    @Test
+    public void parallelArrayDecode() throws IOException {
+        var record = new CborArrayDecoder<>(Collectors.toList(), CborPrim.STRING);
+        var out = new ByteArrayOutputStream();
+        var enc = new CborEncoder(ByteOrder.LITTLE_ENDIAN, out);
+        var arr = enc.writeArray();
+        for (int i = 0; i < 10_000; i++) {
+            enc.writeArray(2);
+            enc.writeText("r" + i);
+            enc.writeText(Integer.toString(i * 31));
+        }
+        arr.end();
+        var bytes = out.toByteArray();
+
+        var sequential = Cbor.decode(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), new CborArrayDecoder<>(Collectors.toList(), record));
+        var pool = new ForkJoinPool(4);
+        try {
+            for (int chunkSize : new int[]{ 1, 7, 100, 100_000 }) {
+                var buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+                var parallel = Cbor.decode(buf, new CborParallelArrayDecoder<>(Collectors.toList(), record, pool, chunkSize));
+                assertEquals(sequential, parallel);
+                assertEquals(0, buf.remaining());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        /* the array does not start at the beginning of the buffer */
+        var prefixed = ByteBuffer.allocate(bytes.length + 1).order(ByteOrder.LITTLE_ENDIAN).put((byte) 0x07).put(bytes).flip();
+        var decoder = new CborDecoder(prefixed);
+        assertEquals(7, decoder.readUInt());
+        assertEquals(sequential, decoder.read(new CborParallelArrayDecoder<>(Collectors.toList(), record, ForkJoinPool.commonPool(), 7)));
+        assertFalse(decoder.hasNext());
+
+        var empty = new byte[]{ (byte) 0x80 };
+        assertEquals(List.of(), Cbor.decode(ByteBuffer.wrap(empty), new CborParallelArrayDecoder<>(Collectors.toList(), record)));
+        var value = Cbor.decode(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN));
+        assertEquals(sequential, value.asDecoder().read(new CborParallelArrayDecoder<>(Collectors.toList(), record)));
+        var wrongItem = new byte[]{ (byte) 0x82, (byte) 0x80, 0x01 };
+        assertThrows(UnexpectedCborException.class, () -> Cbor.decode(ByteBuffer.wrap(wrongItem),
+                new CborParallelArrayDecoder<>(Collectors.toList(), record, ForkJoinPool.commonPool(), 1)));
+    }
+
+    @Test
+    public void profiler() throws IOException {
+        var profiler = new CborProfiler();
+        var variant = profiler.profile("variant", new CborVariantDecoder<Object>(List.of(
+                profiler.profile("number", CborPrim.UNSIGNED),
+                profiler.profile("list", new CborArrayDecoder<>(Collectors.toList(), CborPrim.UNSIGNED)))));
+        var root = profiler.profile("root", new CborMapDecoder<>(MapConstructor.map(HashMap::new), CborPrim.STRING, variant));
+
+        // {"a": 1, "b": [2, 3]}
+        var bytes = new byte[]{ (byte) 0xA2, 0x61, 'a', 0x01, 0x61, 'b', (byte) 0x82, 0x02, 0x03 };
+        var x = Cbor.decode(ByteBuffer.wrap(bytes), root);
+        assertEquals(Map.of("a", 1L, "b", List.of(2L, 3L)), x);
+
+        var rootNode = profiler.root().children().get(0);
+        assertEquals("root", rootNode.name());
+        assertEquals(1, rootNode.calls());
+        assertEquals(bytes.length, rootNode.bytes());
+        assertEquals(5, rootNode.selfBytes());
+        assertTrue(rootNode.selfNanos() <= rootNode.totalNanos());
+
+        var variantNode = rootNode.children().get(0);
+        assertEquals(2, variantNode.calls());
+        assertEquals(4, variantNode.bytes());
+        var byName = variantNode.children().stream().collect(Collectors.toMap(CborProfiler.Node::name, n -> n));
+        assertEquals(1, byName.get("number").calls());
+        assertEquals(0, byName.get("number").misses());
+        assertEquals(1, byName.get("list").calls());
+        assertEquals(3, byName.get("list").bytes());
+        assertTrue(profiler.report().contains("    number"));
+
+        profiler.reset();
+        var encoder = profiler.profile("list", new CborCollectionArrayEncoder<Long, List<Long>>(profiler.profile("item", CborPrim.UNSIGNED)));
+        var out = new ByteArrayOutputStream();
+        var e = new CborEncoder(ByteOrder.BIG_ENDIAN, out);
+        encoder.encode(e, List.of(1L, 1000L));
+        assertNull(e.metrics());
+        var listNode = profiler.root().children().get(0);
+        assertEquals(out.size(), listNode.bytes());
+        assertEquals(1, listNode.selfBytes());
+        assertEquals(2, listNode.children().get(0).calls());
+        assertEquals(4, listNode.children().get(0).bytes());
+    }
 }
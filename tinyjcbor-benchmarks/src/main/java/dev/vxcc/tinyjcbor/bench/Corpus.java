@@ -0,0 +1,157 @@
+package dev.vxcc.tinyjcbor.bench;
+
+import dev.vxcc.tinyjcbor.Cbor;
+import dev.vxcc.tinyjcbor.CborDecoder;
+import dev.vxcc.tinyjcbor.CborType;
+import dev.vxcc.tinyjcbor.UnexpectedCborException;
+import dev.vxcc.tinyjcbor.serde.CborCollectionArrayEncoder;
+import dev.vxcc.tinyjcbor.serde.CborDeserializer;
+import dev.vxcc.tinyjcbor.serde.CborPrim;
+import dev.vxcc.tinyjcbor.serde.CborSerializer;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Generated test data. The generators are seeded, so every run benchmarks the same bytes.
+ */
+public final class Corpus {
+    private Corpus() {}
+
+    private static final String[] KINDS = { "click", "view", "purchase", "login", "logout", "search", "share" };
+    private static final String[] WORDS = {
+            "alpha", "beta", "gamma", "delta", "Grüße", "naïve", "東京", "status", "request", "response", "error", "ok"
+    };
+
+    /** a log event, similar to what is sent by telemetry clients */
+    public record Event(long id, @NotNull String user, @NotNull String kind, long timestamp, double score,
+                        @NotNull List<String> tags, @NotNull Map<String, String> attributes, byte @NotNull [] payload) {}
+
+    public static @NotNull List<Event> events(int count) {
+        var random = new Random(42);
+        var events = new ArrayList<Event>(count);
+        for (int i = 0; i < count; i++) {
+            var tags = new ArrayList<String>();
+            for (int t = random.nextInt(4); t > 0; t--)
+                tags.add(WORDS[random.nextInt(WORDS.length)]);
+            var attributes = new LinkedHashMap<String, String>();
+            for (int a = random.nextInt(8); a > 0; a--)
+                attributes.put("attr" + random.nextInt(32), text(random, 4 + random.nextInt(24)));
+            var payload = new byte[random.nextInt(4) == 0 ? random.nextInt(2048) : random.nextInt(32)];
+            random.nextBytes(payload);
+            events.add(new Event(
+                    i,
+                    "user-" + random.nextInt(100_000),
+                    KINDS[random.nextInt(KINDS.length)],
+                    1_700_000_000_000L + random.nextInt(1 << 30),
+                    random.nextDouble(),
+                    tags,
+                    attributes,
+                    payload));
+        }
+        return events;
+    }
+
+    /** mostly ASCII, with some multi byte characters */
+    public static @NotNull String text(@NotNull Random random, int words) {
+        var sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0)
+                sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    public static @NotNull List<String> strings(int count) {
+        var random = new Random(43);
+        var strings = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+            strings.add(text(random, 1 + random.nextInt(random.nextInt(8) == 0 ? 200 : 6)));
+        return strings;
+    }
+
+    public static @NotNull List<byte[]> byteStrings(int count) {
+        var random = new Random(44);
+        var bytes = new ArrayList<byte[]>(count);
+        for (int i = 0; i < count; i++) {
+            var b = new byte[random.nextInt(8) == 0 ? random.nextInt(8192) : random.nextInt(64)];
+            random.nextBytes(b);
+            bytes.add(b);
+        }
+        return bytes;
+    }
+
+    public static final CborSerializer<Event> EVENT_ENCODER = (encoder, event) -> {
+        encoder.writeMap(8);
+        encoder.writeText("id");
+        encoder.writeUnsigned(event.id());
+        encoder.writeText("user");
+        encoder.writeText(event.user());
+        encoder.writeText("kind");
+        encoder.writeText(event.kind());
+        encoder.writeText("timestamp");
+        encoder.writeUnsigned(event.timestamp());
+        encoder.writeText("score");
+        encoder.writeFloat64(event.score());
+        encoder.writeText("tags");
+        encoder.writeArray(event.tags().size());
+        for (var tag : event.tags())
+            encoder.writeText(tag);
+        encoder.writeText("attributes");
+        encoder.writeMap(event.attributes().size());
+        for (var attribute : event.attributes().entrySet()) {
+            encoder.writeText(attribute.getKey());
+            encoder.writeText(attribute.getValue());
+        }
+        encoder.writeText("payload");
+        encoder.writeByteString(event.payload());
+    };
+
+    public static final CborDeserializer<Event> EVENT_DECODER = new CborPrim.PrimitiveDecoder<>(new CborType[]{ CborType.Map }) {
+        @Override
+        public Event next(@NotNull CborDecoder decoder) throws UnexpectedCborException {
+            long id = 0, timestamp = 0;
+            double score = 0;
+            String user = "", kind = "";
+            var tags = new ArrayList<String>();
+            var attributes = new LinkedHashMap<String, String>();
+            byte[] payload = new byte[0];
+
+            int map = decoder.enterMap();
+            while (decoder.nextItem(map)) {
+                switch (decoder.read(CborPrim.STRING)) {
+                    case "id" -> id = decoder.readUInt();
+                    case "user" -> user = decoder.read(CborPrim.STRING);
+                    case "kind" -> kind = decoder.read(CborPrim.STRING);
+                    case "timestamp" -> timestamp = decoder.readUInt();
+                    case "score" -> score = decoder.readFloat64();
+                    case "tags" -> {
+                        int arr = decoder.enterArray();
+                        while (decoder.nextItem(arr))
+                            tags.add(decoder.read(CborPrim.STRING));
+                    }
+                    case "attributes" -> {
+                        int attrs = decoder.enterMap();
+                        while (decoder.nextItem(attrs))
+                            attributes.put(decoder.read(CborPrim.STRING), decoder.read(CborPrim.STRING));
+                    }
+                    case "payload" -> payload = decoder.read(CborPrim.BYTES);
+                    default -> decoder.readAny();
+                }
+            }
+            return new Event(id, user, kind, timestamp, score, tags, attributes, payload);
+        }
+    };
+
+    public static final CborSerializer<List<Event>> EVENTS_ENCODER = new CborCollectionArrayEncoder<Event, List<Event>>(EVENT_ENCODER);
+
+    public static byte @NotNull [] encode(@NotNull List<Event> events) {
+        return Cbor.encode(ByteOrder.BIG_ENDIAN, events, EVENTS_ENCODER);
+    }
+
+    public static <T> byte @NotNull [] encodeArray(@NotNull List<T> items, @NotNull CborSerializer<T> item) {
+        return Cbor.encode(ByteOrder.BIG_ENDIAN, items, new CborCollectionArrayEncoder<T, List<T>>(item));
+    }
+}
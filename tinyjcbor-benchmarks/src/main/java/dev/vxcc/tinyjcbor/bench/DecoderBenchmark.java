@@ -0,0 +1,99 @@
+package dev.vxcc.tinyjcbor.bench;
+
+import dev.vxcc.tinyjcbor.CborDecoder;
+import dev.vxcc.tinyjcbor.CborToken;
+import dev.vxcc.tinyjcbor.CborVisitor;
+import dev.vxcc.tinyjcbor.serde.CborArrayDecoder;
+import dev.vxcc.tinyjcbor.util.CborValue;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Low-level reading of a corpus of {@link Corpus.Event}s, and decoding it into objects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+    @Param({ "100", "10000" })
+    public int events;
+
+    private byte[] bytes;
+
+    private static final CborArrayDecoder<Corpus.Event, List<Corpus.Event>> EVENTS = new CborArrayDecoder<>(Collectors.toList(), Corpus.EVENT_DECODER);
+    private static final CborArrayDecoder<CborValue, List<CborValue>> VALUES = new CborArrayDecoder<>(Collectors.toList(), CborValue.CODEC);
+
+    @Setup
+    public void setup() {
+        bytes = Corpus.encode(Corpus.events(events));
+    }
+
+    /** pull API, without looking at the string contents */
+    @Benchmark
+    public void tokens(Blackhole bh) {
+        var decoder = new CborDecoder(ByteBuffer.wrap(bytes));
+        while (decoder.hasNext()) {
+            int kind = decoder.next();
+            bh.consume(decoder.tokenArg());
+            if ((kind == CborToken.TEXT || kind == CborToken.BYTE_STRING) && !decoder.tokenIndefiniteLength())
+                decoder.skipTokenContent();
+        }
+    }
+
+    /** pull API, with views of the string contents */
+    @Benchmark
+    public void tokenContents(Blackhole bh) {
+        var decoder = new CborDecoder(ByteBuffer.wrap(bytes));
+        while (decoder.hasNext()) {
+            int kind = decoder.next();
+            if ((kind == CborToken.TEXT || kind == CborToken.BYTE_STRING) && !decoder.tokenIndefiniteLength())
+                bh.consume(decoder.tokenContent().remaining());
+            else
+                bh.consume(decoder.tokenArg());
+        }
+    }
+
+    /** skips the whole corpus */
+    @Benchmark
+    public void readAny() {
+        new CborDecoder(ByteBuffer.wrap(bytes)).readAny();
+    }
+
+    /** skips every event separately, like a scanner looking for item boundaries */
+    @Benchmark
+    public int readAnyItems() {
+        var decoder = new CborDecoder(ByteBuffer.wrap(bytes));
+        int items = 0;
+        int arr = decoder.enterArray();
+        while (decoder.nextItem(arr)) {
+            decoder.readAny();
+            items++;
+        }
+        return items;
+    }
+
+    @Benchmark
+    public void visitor() {
+        new CborDecoder(ByteBuffer.wrap(bytes)).accept(new CborVisitor() {});
+    }
+
+    /** map-heavy records, decoded by a hand-written deserializer */
+    @Benchmark
+    public Object records() {
+        return new CborDecoder(ByteBuffer.wrap(bytes)).read(EVENTS);
+    }
+
+    /** the same records, decoded into a generic tree */
+    @Benchmark
+    public Object values() {
+        return new CborDecoder(ByteBuffer.wrap(bytes)).read(VALUES);
+    }
+}
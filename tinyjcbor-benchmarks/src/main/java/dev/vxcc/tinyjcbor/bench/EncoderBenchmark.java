@@ -0,0 +1,75 @@
+package dev.vxcc.tinyjcbor.bench;
+
+import dev.vxcc.tinyjcbor.CborEncoder;
+import dev.vxcc.tinyjcbor.CborOutputBuffer;
+import dev.vxcc.tinyjcbor.CborSegmentedOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a corpus of {@link Corpus.Event}s into different outputs.
+ * <p>Outputs and encoders are reused between invocations, like a server would do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderBenchmark {
+    @Param({ "100", "10000" })
+    public int events;
+
+    private List<Corpus.Event> corpus;
+
+    private final CborOutputBuffer outputBuffer = new CborOutputBuffer();
+    private final CborEncoder outputBufferEncoder = new CborEncoder(ByteOrder.BIG_ENDIAN, outputBuffer);
+
+    private final CborSegmentedOutput segmented = new CborSegmentedOutput();
+    private final CborEncoder segmentedEncoder = new CborEncoder(ByteOrder.BIG_ENDIAN, segmented);
+
+    private final ByteArrayOutputStream byteArray = new ByteArrayOutputStream();
+    private final CborEncoder byteArrayEncoder = new CborEncoder(ByteOrder.BIG_ENDIAN, byteArray);
+
+    private final CborEncoder discardEncoder = new CborEncoder(ByteOrder.BIG_ENDIAN, new BufferedOutputStream(OutputStream.nullOutputStream(), 8192));
+
+    @Setup
+    public void setup() {
+        corpus = Corpus.events(events);
+    }
+
+    @Benchmark
+    public int outputBuffer() throws IOException {
+        outputBuffer.reset();
+        outputBufferEncoder.write(Corpus.EVENTS_ENCODER, corpus);
+        return outputBuffer.size();
+    }
+
+    /** large payloads are referenced instead of copied */
+    @Benchmark
+    public long segmentedOutput() throws IOException {
+        segmented.reset();
+        segmentedEncoder.write(Corpus.EVENTS_ENCODER, corpus);
+        return segmented.size();
+    }
+
+    @Benchmark
+    public int byteArrayOutputStream() throws IOException {
+        byteArray.reset();
+        byteArrayEncoder.write(Corpus.EVENTS_ENCODER, corpus);
+        return byteArray.size();
+    }
+
+    /** a buffered stream, that would write to a file or socket */
+    @Benchmark
+    public void bufferedStream() throws IOException {
+        discardEncoder.write(Corpus.EVENTS_ENCODER, corpus);
+    }
+}
@@ -0,0 +1,70 @@
+package dev.vxcc.tinyjcbor.bench;
+
+import dev.vxcc.tinyjcbor.Cbor;
+import dev.vxcc.tinyjcbor.CborDecoder;
+import dev.vxcc.tinyjcbor.util.CborValue;
+import dev.vxcc.tinyjcbor.serde.CborPrim;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The primitive string codecs, and {@link CborValue#CODEC} round trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerDeBenchmark {
+    @Param({ "1000" })
+    public int count;
+
+    private byte[] strings;
+    private byte[] byteStrings;
+    private byte[] events;
+    private CborValue eventsValue;
+
+    @Setup
+    public void setup() {
+        strings = Corpus.encodeArray(Corpus.strings(count), CborPrim.STRING);
+        byteStrings = Corpus.encodeArray(Corpus.byteStrings(count), CborPrim.BYTES);
+        events = Corpus.encode(Corpus.events(count));
+        eventsValue = Cbor.decode(ByteBuffer.wrap(events));
+    }
+
+    @Benchmark
+    public void string(Blackhole bh) {
+        var decoder = new CborDecoder(ByteBuffer.wrap(strings));
+        int arr = decoder.enterArray();
+        while (decoder.nextItem(arr))
+            bh.consume(decoder.read(CborPrim.STRING));
+    }
+
+    @Benchmark
+    public void bytes(Blackhole bh) {
+        var decoder = new CborDecoder(ByteBuffer.wrap(byteStrings));
+        int arr = decoder.enterArray();
+        while (decoder.nextItem(arr))
+            bh.consume(decoder.read(CborPrim.BYTES));
+    }
+
+    @Benchmark
+    public CborValue valueDecode() {
+        return Cbor.decode(ByteBuffer.wrap(events));
+    }
+
+    @Benchmark
+    public byte[] valueEncode() {
+        return Cbor.encode(ByteOrder.BIG_ENDIAN, eventsValue, CborValue.CODEC);
+    }
+
+    @Benchmark
+    public byte[] valueRoundTrip() {
+        return Cbor.encode(ByteOrder.BIG_ENDIAN, Cbor.decode(ByteBuffer.wrap(events)), CborValue.CODEC);
+    }
+}
@@ -0,0 +1,64 @@
+package dev.vxcc.tinyjcbor.bench;
+
+import dev.vxcc.tinyjcbor.CborDecoder;
+import dev.vxcc.tinyjcbor.serde.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CborVariantDecoder} with a growing number of variants.
+ * <p>Every variant is a tagged item, so all variants accept the same token type, and have to be tried one after another.
+ * An untagged string variant is always present, and is found by the type of the token alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariantBenchmark {
+    private static final int ITEMS = 1000;
+    private static final long FIRST_TAG = 1000;
+
+    @Param({ "2", "8", "32" })
+    public int variants;
+
+    private byte[] bytes;
+    private CborVariantDecoder<Object> decoder;
+
+    @Setup
+    public void setup() {
+        List<CborDeserializer<? extends Object>> decoders = new ArrayList<>();
+        decoders.add(CborPrim.STRING);
+        for (int i = 0; i < variants; i++)
+            decoders.add(new CborFixedTagDecoder<>(FIRST_TAG + i, CborPrim.UNSIGNED));
+        decoder = new CborVariantDecoder<>(decoders);
+
+        var random = new Random(45);
+        var items = new ArrayList<Integer>();
+        for (int i = 0; i < ITEMS; i++)
+            items.add(random.nextInt(variants + 1));
+        bytes = Corpus.encodeArray(items, (encoder, variant) -> {
+            if (variant == variants) {
+                encoder.writeText("text");
+            } else {
+                encoder.writeTag(FIRST_TAG + variant);
+                encoder.writeUnsigned(variant);
+            }
+        });
+    }
+
+    @Benchmark
+    public void variants(Blackhole bh) {
+        var d = new CborDecoder(ByteBuffer.wrap(bytes));
+        int arr = d.enterArray();
+        while (d.nextItem(arr))
+            bh.consume(d.read(decoder));
+    }
+}